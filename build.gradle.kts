@@ -22,6 +22,17 @@ repositories {
     mavenCentral()
 }
 
+// Microbenchmarks (run with: ./gradlew jmh -Pjmh.includes=<regex>)
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations.implementation.get())
+configurations["jmhRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
 dependencies {
     // Serial communication (replaces RXTX)
     implementation("com.fazecast:jSerialComm:2.10.4")
@@ -30,13 +41,17 @@ dependencies {
     implementation("jakarta.xml.bind:jakarta.xml.bind-api:4.0.2")
     runtimeOnly("org.glassfish.jaxb:jaxb-runtime:4.0.5")
 
-    // CSV (replaces javacsv-2.0)
-    implementation("org.apache.commons:commons-csv:1.11.0")
-
     // Testing
     testImplementation("org.junit.jupiter:junit-jupiter:5.10.2")
     testImplementation("org.hamcrest:hamcrest:2.2")
+    // Reference implementation of the CSV dialect
+    testImplementation("org.apache.commons:commons-csv:1.11.0")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    // Benchmarks
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+    "jmhImplementation"("org.apache.commons:commons-csv:1.11.0")
 }
 
 application {
@@ -47,6 +62,14 @@ tasks.test {
     useJUnitPlatform()
 }
 
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs JMH microbenchmarks."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args(project.findProperty("jmh.includes")?.toString() ?: ".*")
+}
+
 tasks.jar {
     manifest {
         attributes(
@@ -0,0 +1,109 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.render;
+
+import com.pavelfatin.sleeparchiver.model.Night;
+import com.pavelfatin.sleeparchiver.model.Samples;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Paints cells of an offscreen canvas, the wider the chart the more labels fit
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NightRenderBenchmark {
+    private static final int CELLS = 100;
+
+    @Param({"900", "4000"})
+    private int _width;
+
+    private List<Night> _nights;
+    private NightRenderer _renderer;
+    private NightRenderer _formerRenderer;
+    private Canvas _canvas;
+
+    @Setup
+    public void setUp() {
+        _nights = Samples.nights(CELLS);
+
+        _renderer = rendererOf(new NightRenderer());
+        _formerRenderer = rendererOf(new NightRenderer(LayoutMeasure::new));
+
+        _canvas = new Canvas(_width, _renderer.getPreferredHeight());
+    }
+
+    private NightRenderer rendererOf(NightRenderer renderer) {
+        GridTransform transform = new GridTransform("grid", 22, 10, false);
+        renderer.setTransform(transform);
+        renderer.setNights(_nights);
+        renderer.setResolution((_width - 2.0 * NightRenderer.H_GAP) / transform.getGridRangeMinutes());
+        return renderer;
+    }
+
+    @Benchmark
+    public Canvas paint() {
+        return paint(_renderer);
+    }
+
+    // Former path: a Text node laid out for every label
+    @Benchmark
+    public Canvas textNodes() {
+        return paint(_formerRenderer);
+    }
+
+    private Canvas paint(NightRenderer renderer) {
+        for (Night night : _nights) {
+            renderer.render(_canvas, night, false, false);
+        }
+        return _canvas;
+    }
+
+    private static class LayoutMeasure extends TextMeasure {
+        private final Font _font;
+
+        LayoutMeasure(Font font) {
+            super(font);
+            _font = font;
+        }
+
+        @Override
+        double width(String text) {
+            return textOf(text).getLayoutBounds().getWidth();
+        }
+
+        @Override
+        double height() {
+            return textOf("0").getLayoutBounds().getHeight();
+        }
+
+        private Text textOf(String text) {
+            Text t = new Text(text);
+            t.setFont(_font);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataImportBenchmark {
+    private static final CSVFormat CSV_FORMAT = CSVFormat.Builder.create()
+            .setDelimiter(';')
+            .setQuote('"')
+            .build();
+
+    @Param({"20000", "100000"})
+    private int _count;
+
+    private String _data;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringWriter buffer = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(buffer)) {
+            Document.exportDataTo(writer, Samples.nights(_count));
+        }
+        _data = buffer.toString();
+    }
+
+    @Benchmark
+    public List<Night> tokenizer() throws IOException {
+        return Document.importDataFrom(new StringReader(_data));
+    }
+
+    // Former path: a CSVParser, regular expressions and formatters for every line
+    @Benchmark
+    public List<Night> parserPerLine() throws IOException {
+        BufferedReader reader = new BufferedReader(new StringReader(_data));
+        List<Night> nights = new ArrayList<>();
+        while (reader.ready()) {
+            String line = reader.readLine();
+            if (line == null) {
+                break;
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            nights.add(parse(split(line)));
+        }
+        nights.sort(Night.getComparator());
+        return nights;
+    }
+
+    private static Night parse(List<String> columns) {
+        List<LocalTime> moments = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        boolean momentsColumns = true;
+        for (int i = 9; i < columns.size(); i++) {
+            String column = columns.get(i);
+            if (column.isEmpty()) {
+                momentsColumns = false;
+                continue;
+            }
+            if (momentsColumns) {
+                moments.add(Document.parseTime(column));
+            } else {
+                conditions.add(column);
+            }
+        }
+        return new Night(Document.parseDate(columns.get(0)),
+                Document.parseTime(columns.get(1)),
+                Integer.parseInt(columns.get(2)),
+                Document.parseTime(columns.get(3)),
+                Ease.parse(columns.get(4)),
+                Quality.parse(columns.get(5)),
+                Ease.parse(columns.get(6)),
+                "true".equalsIgnoreCase(columns.get(7)),
+                columns.get(8),
+                moments, conditions);
+    }
+
+    private static List<String> split(String line) throws IOException {
+        List<String> columns = new ArrayList<>();
+        try (CSVParser parser = CSVParser.parse(line, CSV_FORMAT)) {
+            CSVRecord record = parser.iterator().next();
+            for (String token : record) {
+                columns.add(token.replaceAll("\\\\r", "\r").replaceAll("\\\\n", "\n"));
+            }
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class DocumentCompressBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    private int _count;
+
+    private Document _document;
+
+    @Setup
+    public void setUp() {
+        _document = new Document(Samples.nights(_count));
+    }
+
+    // Former path: a single-threaded deflater
+    @Benchmark
+    public void sequential() throws IOException {
+        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(OutputStream.nullOutputStream()))) {
+            _document.writeTo(out);
+        }
+    }
+
+    @Benchmark
+    public void parallel() throws IOException {
+        try (OutputStream out = new BufferedOutputStream(
+                new ParallelGzipOutputStream(new BufferedOutputStream(OutputStream.nullOutputStream())))) {
+            _document.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentSaveBenchmark {
+    @Param({"10000", "50000"})
+    private int _count;
+
+    private Document _document;
+    private Schema _schema;
+
+    @Setup
+    public void setUp() throws Exception {
+        _document = new Document(Samples.nights(_count));
+        _schema = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(Document.class.getResource("document.xsd"));
+    }
+
+    @Benchmark
+    public void cachedContext(Blackhole blackhole) throws JAXBException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        _document.saveTo(buffer);
+        blackhole.consume(buffer.size());
+    }
+
+    // Former path: a new context and marshaller for every save
+    @Benchmark
+    public void newContext(Blackhole blackhole) throws JAXBException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        Marshaller marshaller = JAXBContext.newInstance(Document.class).createMarshaller();
+        marshaller.setEventHandler(new ValidationHandler());
+        marshaller.setSchema(_schema);
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        marshaller.marshal(_document, buffer);
+        blackhole.consume(buffer.size());
+    }
+}
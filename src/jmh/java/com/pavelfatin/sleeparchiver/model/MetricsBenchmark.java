@@ -0,0 +1,105 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    private static final LocalTime MORNING = LocalTime.of(16, 0);
+
+    @Param({"10000", "100000"})
+    private int _count;
+
+    private List<Night> _nights;
+
+    @Setup
+    public void setUp() {
+        _nights = new ArrayList<>();
+        for (Night night : Samples.nights(_count)) {
+            if (night.isComplete()) {
+                _nights.add(night);
+            }
+        }
+    }
+
+    @Benchmark
+    public long kernel() {
+        long sum = 0;
+        for (Night night : _nights) {
+            Metrics metrics = new Metrics(night);
+            sum += metrics.getDuration() + metrics.getBreaksCount() + metrics.getDeepSleepMinutes();
+        }
+        return sum;
+    }
+
+    // Former path: lists of times, instants and spans for every night
+    @Benchmark
+    public long instantsAndSpans() {
+        long sum = 0;
+        for (Night night : _nights) {
+            List<LocalTime> moments = completeMoments(night);
+            List<SleepInstant> instants = SleepInstant.toInstants(moments);
+            List<SleepSpan> spans = SleepSpan.toSpans(instants);
+            int deepSleep = spans.stream()
+                    .mapToInt(SleepSpan::toMinutes)
+                    .filter(m -> m > 45)
+                    .sum();
+            sum += duration(spans) + (moments.size() - 2) + deepSleep;
+        }
+        return sum;
+    }
+
+    private static List<LocalTime> completeMoments(Night night) {
+        LocalTime alarm = night.getAlarm();
+        boolean morningAlarm = alarm.isBefore(MORNING);
+
+        List<LocalTime> moments = new ArrayList<>();
+        moments.add(night.getToBed());
+        for (LocalTime moment : night.getMoments()) {
+            if (morningAlarm && moment.isBefore(MORNING) && moment.isAfter(alarm)) {
+                continue;
+            }
+            moments.add(moment);
+        }
+        moments.add(alarm);
+        return moments;
+    }
+
+    private static int duration(List<SleepSpan> spans) {
+        SleepInstant wakeUp = spans.getLast().begin();
+        for (int i = spans.size() - 1; i >= 0; i--) {
+            if (spans.get(i).toMinutes() >= 15) {
+                wakeUp = spans.get(i).end();
+                break;
+            }
+        }
+        return new SleepSpan(spans.getFirst().begin(), wakeUp).toMinutes();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NightEqualityBenchmark {
+    @Param({"10000", "100000"})
+    private int _count;
+
+    private List<Night> _nights;
+
+    // Equal to the nights, but distinct instances
+    private List<Night> _copies;
+
+    @Setup
+    public void setUp() {
+        _nights = Samples.nights(_count);
+        _copies = Samples.nights(_count);
+    }
+
+    // Skipping the already present nights, as on import
+    @Benchmark
+    public int dedup() {
+        Set<Night> present = new HashSet<>(_nights);
+        int duplicates = 0;
+        for (Night night : _copies) {
+            if (present.contains(night)) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    @Benchmark
+    public boolean equalLists() {
+        return _nights.equals(_copies);
+    }
+
+    @Benchmark
+    public int differentNights() {
+        int equal = 0;
+        for (int i = 1; i < _nights.size(); i++) {
+            if (_nights.get(i - 1).equals(_copies.get(i))) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+
+    @Benchmark
+    public long hashes() {
+        long sum = 0;
+        for (Night night : _nights) {
+            sum += night.hashCode();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Measures the retained heap per night of imported data.
+ * <p>
+ * Run with a fixed heap, e.g. {@code -Xms2g -Xmx2g}, for stable numbers.
+ */
+public class NightFootprint {
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        StringWriter buffer = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(buffer)) {
+            Document.exportDataTo(writer, Samples.nights(count));
+        }
+        String data = buffer.toString();
+
+        long before = usedMemory();
+        List<Night> nights = Document.importDataFrom(new StringReader(data));
+        long after = usedMemory();
+
+        System.out.printf("%d nights, %.1f bytes per night%n", nights.size(), (double) (after - before) / count);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
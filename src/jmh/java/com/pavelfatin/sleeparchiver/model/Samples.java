@@ -0,0 +1,64 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class Samples {
+    private static final String[] CONDITIONS = {"Coffee", "Tea", "Sport", "Stress", "Alcohol", "Late dinner"};
+
+    private Samples() {
+    }
+
+    public static List<Night> nights(int count) {
+        Random random = new Random(42);
+        List<Night> nights = new ArrayList<>(count);
+        LocalDate date = LocalDate.of(2000, 1, 1);
+        for (int i = 0; i < count; i++) {
+            LocalTime toBed = LocalTime.of(22, 0).plusMinutes(random.nextInt(120));
+            LocalTime alarm = LocalTime.of(7, 0).plusMinutes(random.nextInt(90));
+
+            List<LocalTime> moments = new ArrayList<>();
+            LocalTime moment = toBed.plusMinutes(30);
+            int momentsCount = 3 + random.nextInt(10);
+            for (int j = 0; j < momentsCount && moment.isAfter(LocalTime.of(16, 0)) || moment.isBefore(alarm); j++) {
+                moments.add(moment);
+                moment = moment.plusMinutes(10 + random.nextInt(60));
+            }
+
+            List<String> conditions = new ArrayList<>();
+            for (String condition : CONDITIONS) {
+                if (random.nextInt(4) == 0) {
+                    conditions.add(condition);
+                }
+            }
+
+            nights.add(new Night(date.plusDays(i), alarm, 10 * random.nextInt(10), toBed,
+                    Ease.values()[random.nextInt(4)], Quality.values()[random.nextInt(4)],
+                    Ease.values()[random.nextInt(4)], random.nextBoolean(),
+                    random.nextInt(10) == 0 ? "Comment #" + i : "",
+                    moments, conditions));
+        }
+        return nights;
+    }
+}
@@ -143,7 +143,7 @@ public class ConditionsDialog extends Dialog<List<Night>> {
                 conditions.set(conditions.indexOf(condition), replacement);
             }
             Set<String> unique = new TreeSet<>(conditions);
-            result.add(night.with(new ArrayList<>(unique)));
+            result.add(withConditions(night, new ArrayList<>(unique)));
         }
         return result;
     }
@@ -167,8 +167,13 @@ public class ConditionsDialog extends Dialog<List<Night>> {
         for (Night night : nights) {
             List<String> copy = new ArrayList<>(night.getConditions());
             copy.removeAll(conditions);
-            result.add(night.with(copy));
+            result.add(withConditions(night, copy));
         }
         return result;
     }
+
+    // Unchanged nights are kept as they are, so that only the edited ones are recorded as changes
+    private static Night withConditions(Night night, List<String> conditions) {
+        return conditions.equals(night.getConditions()) ? night : night.with(conditions);
+    }
 }
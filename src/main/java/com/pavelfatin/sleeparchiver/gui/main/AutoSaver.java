@@ -0,0 +1,186 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main;
+
+import com.pavelfatin.sleeparchiver.model.Document;
+import com.pavelfatin.sleeparchiver.model.Night;
+import javafx.application.Platform;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists document changes on a background thread.
+ * <p>
+ * Changes submitted in quick succession are combined into a single journal
+ * write; the journal is compacted into the document file once it grows past
+ * the limit. The document must not be accessed by other threads until
+ * {@link #flush()} returns.
+ */
+class AutoSaver {
+    private static final long DELAY = 300;
+    private static final int JOURNAL_LIMIT = 1000;
+
+    enum State {SAVING, SAVED, FAILED}
+
+    interface Listener {
+        void stateChanged(State state, IOException error);
+    }
+
+    private final Listener _listener;
+    private final Executor _callbacks;
+    private final ScheduledExecutorService _executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Document _document;
+    private final List<Night> _removed = new ArrayList<>();
+    private final List<Night> _added = new ArrayList<>();
+    private boolean _backup;
+    private ScheduledFuture<?> _scheduled;
+    private boolean _writing;
+    private boolean _failed;
+
+    AutoSaver(Listener listener) {
+        this(listener, Platform::runLater);
+    }
+
+    /**
+     * @param callbacks runs listener notifications, the FX thread by default
+     */
+    AutoSaver(Listener listener, Executor callbacks) {
+        _listener = listener;
+        _callbacks = callbacks;
+    }
+
+    synchronized void submit(Document document, List<Night> removed, List<Night> added, boolean backup) {
+        if (_document != null && _document != document) {
+            throw new IllegalStateException("Pending changes of another document");
+        }
+        _document = document;
+        _removed.addAll(removed);
+        _added.addAll(added);
+        _backup = backup;
+        if (_scheduled == null) {
+            _scheduled = _executor.schedule(this::write, DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes pending changes and waits until they are persisted.
+     */
+    void flush() {
+        synchronized (this) {
+            if (_scheduled != null && _scheduled.cancel(false)) {
+                _scheduled = null;
+            }
+        }
+        Future<?> future = _executor.submit(this::write);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the thread of the writes, for the files that accompany the document
+     */
+    ExecutorService getExecutor() {
+        return _executor;
+    }
+
+    /**
+     * @return whether there are changes not yet persisted
+     */
+    synchronized boolean isPending() {
+        return _document != null || _writing;
+    }
+
+    /**
+     * @return whether a write has failed, so that the journal no longer matches the document
+     */
+    synchronized boolean isFailed() {
+        return _failed;
+    }
+
+    /**
+     * Must be called after the document is saved in full.
+     */
+    synchronized void reset() {
+        _failed = false;
+    }
+
+    private void write() {
+        Document document;
+        List<Night> removed;
+        List<Night> added;
+        boolean backup;
+        synchronized (this) {
+            _scheduled = null;
+            if (_document == null) {
+                return;
+            }
+            document = _document;
+            removed = new ArrayList<>(_removed);
+            added = new ArrayList<>(_added);
+            backup = _backup;
+            _document = null;
+            _removed.clear();
+            _added.clear();
+            _writing = true;
+        }
+
+        notify(State.SAVING, null);
+        IOException error = null;
+        try {
+            document.update(removed, added);
+            if (document.getJournalSize() > JOURNAL_LIMIT) {
+                document.saveAs(document.getLocation(), backup);
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException(e.getMessage(), e);
+        } finally {
+            synchronized (this) {
+                _writing = false;
+                _failed |= error != null;
+            }
+        }
+        notify(error == null ? State.SAVED : State.FAILED, error);
+    }
+
+    private void notify(State state, IOException error) {
+        _callbacks.execute(() -> _listener.stateChanged(state, error));
+    }
+}
@@ -26,7 +26,9 @@ import com.pavelfatin.sleeparchiver.gui.main.render.GridTransform;
 import com.pavelfatin.sleeparchiver.gui.main.render.NightRenderer;
 import com.pavelfatin.sleeparchiver.gui.night.NightDialog;
 import com.pavelfatin.sleeparchiver.gui.preferences.PreferencesDialog;
+import com.pavelfatin.sleeparchiver.gui.statistics.StatisticsDialog;
 import com.pavelfatin.sleeparchiver.model.*;
+import javafx.animation.PauseTransition;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.collections.FXCollections;
@@ -35,6 +37,7 @@ import javafx.collections.ObservableList;
 import javafx.geometry.Pos;
 import javafx.scene.control.*;
 import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.KeyCombination;
 import javafx.scene.input.MouseButton;
 import javafx.scene.canvas.Canvas;
@@ -42,6 +45,7 @@ import javafx.scene.layout.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import javafx.util.Duration;
 
 import com.pavelfatin.sleeparchiver.model.Device;
 
@@ -53,27 +57,38 @@ import java.time.LocalTime;
 import java.time.YearMonth;
 import java.time.format.TextStyle;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static com.pavelfatin.sleeparchiver.lang.I18n.t;
 
 public class MainView extends BorderPane {
     private static final String APP_NAME = "SleepArchiver";
     private static final String APP_VERSION = "2.0.5";
+    private static final long RESIZE_DELAY = 150;
 
     private final Stage _stage;
     private Preferences _preferences;
 
     private final ObservableList<Night> _nights = FXCollections.observableArrayList();
-    private List<Night> _allNights = new ArrayList<>();
+    private NightIndex _index = new NightIndex();
+    private long _savedVersion;
+    private NightStore _store;
+    private SummaryCache _summaries;
     private ListView<Night> _listView;
+    private TimelineView _timelineView;
+    private VBox _centerBox;
     private final NightRenderer _renderer = new NightRenderer();
 
     private final Invoker _invoker = new Invoker();
+    private History _history;
+    private final List<Night> _removedNights = new ArrayList<>();
+    private final List<Night> _addedNights = new ArrayList<>();
+    private boolean _recording;
+    private final AutoSaver _autoSaver = new AutoSaver(this::autoSaveStateChanged);
     private final BooleanProperty _undoEnabled = new SimpleBooleanProperty(false);
     private final BooleanProperty _redoEnabled = new SimpleBooleanProperty(false);
     private final BooleanProperty _editEnabled = new SimpleBooleanProperty(false);
     private final BooleanProperty _removeEnabled = new SimpleBooleanProperty(false);
+    private final BooleanProperty _modifiable = new SimpleBooleanProperty(true);
 
     private Document _document;
     private StatusBar _statusBar;
@@ -81,6 +96,8 @@ public class MainView extends BorderPane {
     private GridTransform _gridTransform;
     private Canvas _topAxisCanvas;
     private Canvas _bottomAxisCanvas;
+    // The layout is updated once the width settles
+    private final PauseTransition _resizeDelay = new PauseTransition(Duration.millis(RESIZE_DELAY));
 
     private MenuItem _undoMenuItem;
     private MenuItem _redoMenuItem;
@@ -100,6 +117,7 @@ public class MainView extends BorderPane {
     public MainView(Stage stage, Document document, Preferences preferences) {
         _stage = stage;
         _preferences = preferences;
+        updateUndoLimits();
 
         _gridTransform = createGridTransform();
         _renderer.setTransform(_gridTransform);
@@ -108,25 +126,29 @@ public class MainView extends BorderPane {
 
         setTop(createMenuAndToolBar());
         _listView = createListView();
+        _timelineView = createTimelineView();
 
         _topAxisCanvas = new Canvas(100, 14);
         _bottomAxisCanvas = new Canvas(100, 14);
 
-        VBox centerBox = new VBox(_topAxisCanvas, _listView, _bottomAxisCanvas);
+        _centerBox = new VBox();
         VBox.setVgrow(_listView, Priority.ALWAYS);
-        setCenter(centerBox);
+        VBox.setVgrow(_timelineView, Priority.ALWAYS);
+        updateView();
+        setCenter(_centerBox);
 
         _statusBar = new StatusBar();
         setBottom(_statusBar);
 
-        _listView.widthProperty().addListener((obs, oldVal, newVal) -> {
-            recalcResolution();
-            redrawAxes();
-            _listView.refresh();
-        });
+        _resizeDelay.setOnFinished(e -> updateLayout());
+        _listView.widthProperty().addListener((obs, oldVal, newVal) -> _resizeDelay.playFromStart());
+        _timelineView.widthProperty().addListener((obs, oldVal, newVal) -> _resizeDelay.playFromStart());
 
         _nights.addListener((ListChangeListener<Night>) c -> {
-            updateRenderer();
+            if (_recording) {
+                recordChange(c);
+            }
+            updateRenderer(c);
             updateTitle();
             updateStatusBar();
         });
@@ -168,12 +190,13 @@ public class MainView extends BorderPane {
         fileMenu.getItems().addAll(
                 menuItem(t("action.new"), "Ctrl+N", e -> blank()),
                 menuItem(t("action.open"), "Ctrl+O", e -> open()),
+                menuItem(t("action.openReadOnly"), null, e -> openReadOnly()),
                 createRecentMenu(),
                 new SeparatorMenuItem(),
                 menuItem(t("action.save"), "Ctrl+S", e -> save()),
                 menuItem(t("action.saveAs"), "Ctrl+Shift+S", e -> saveAs()),
                 new SeparatorMenuItem(),
-                menuItem(t("action.import"), null, e -> importData()),
+                modifyingItem(t("action.import"), null, e -> importData()),
                 menuItem(t("action.export"), null, e -> exportData()),
                 new SeparatorMenuItem(),
                 menuItem(t("action.exit"), null, e -> exit())
@@ -192,7 +215,7 @@ public class MainView extends BorderPane {
         );
 
         Menu nightsMenu = new Menu(t("menu.nights"));
-        MenuItem addItem = menuItem(t("action.add"), null, e -> add());
+        MenuItem addItem = modifyingItem(t("action.add"), null, e -> add());
         MenuItem editItem = menuItem(t("action.edit"), null, e -> edit());
         editItem.disableProperty().bind(_editEnabled.not());
         MenuItem removeItem = menuItem(t("action.remove"), null, e -> remove());
@@ -202,9 +225,11 @@ public class MainView extends BorderPane {
                 editItem,
                 removeItem,
                 new SeparatorMenuItem(),
-                menuItem(t("action.acquire"), "Ctrl+I", e -> download()),
+                modifyingItem(t("action.acquire"), "Ctrl+I", e -> download()),
                 new SeparatorMenuItem(),
-                menuItem(t("action.conditions"), "Ctrl+D", e -> conditions()),
+                modifyingItem(t("action.conditions"), "Ctrl+D", e -> conditions()),
+                menuItem(t("action.statistics"), "Ctrl+T", e -> statistics()),
+                timelineItem(),
                 menuItem(t("action.preferences"), "Ctrl+P", e -> preferences())
         );
 
@@ -253,10 +278,31 @@ public class MainView extends BorderPane {
         return item;
     }
 
+    private CheckMenuItem timelineItem() {
+        CheckMenuItem item = new CheckMenuItem(t("action.timeline"));
+        item.setAccelerator(KeyCombination.valueOf("Ctrl+L"));
+        item.setSelected(_preferences.isTimelineView());
+        item.setOnAction(e -> {
+            _preferences.setTimelineView(item.isSelected());
+            try {
+                _preferences.save();
+            } catch (IOException ignored) {}
+            updateView();
+        });
+        return item;
+    }
+
+    private MenuItem modifyingItem(String text, String accelerator, javafx.event.EventHandler<javafx.event.ActionEvent> handler) {
+        MenuItem item = menuItem(text, accelerator, handler);
+        item.disableProperty().bind(_modifiable.not());
+        return item;
+    }
+
     // ---- ToolBar ----
 
     private ToolBar createToolBar() {
         Button addBtn = new Button(t("toolbar.add"));
+        addBtn.disableProperty().bind(_modifiable.not());
         addBtn.setOnAction(e -> add());
         Button editBtn = new Button(t("toolbar.edit"));
         editBtn.disableProperty().bind(_editEnabled.not());
@@ -281,6 +327,7 @@ public class MainView extends BorderPane {
         refreshBtn.setOnAction(e -> refreshPorts());
 
         Button acquireBtn = new Button(t("toolbar.acquire"));
+        acquireBtn.disableProperty().bind(_modifiable.not());
         acquireBtn.setOnAction(e -> download());
 
         // Navigation controls
@@ -421,8 +468,8 @@ public class MainView extends BorderPane {
     private void updateMonthButtons() {
         YearMonth prev = _currentMonth.minusMonths(1);
         YearMonth next = _currentMonth.plusMonths(1);
-        boolean hasPrev = _allNights.stream().anyMatch(n -> YearMonth.from(n.getDate()).equals(prev));
-        boolean hasNext = _allNights.stream().anyMatch(n -> YearMonth.from(n.getDate()).equals(next));
+        boolean hasPrev = !_index.month(prev).isEmpty();
+        boolean hasNext = !_index.month(next).isEmpty();
         _prevBtn.setDisable(!hasPrev);
         _nextBtn.setDisable(!hasNext);
     }
@@ -442,9 +489,12 @@ public class MainView extends BorderPane {
         }
     }
 
+    // The index is already in ascending order
     private List<Night> sortedNights(List<Night> list) {
         List<Night> result = new ArrayList<>(list);
-        result.sort(getNightComparator());
+        if (!"asc".equals(_preferences.getSortOrder())) {
+            Collections.reverse(result);
+        }
         return result;
     }
 
@@ -454,16 +504,9 @@ public class MainView extends BorderPane {
 
         if ("days".equals(mode)) {
             int days = _preferences.getDisplayDays();
-            if (days > 0 && !_allNights.isEmpty()) {
-                int fromIndex = Math.max(0, _allNights.size() - days);
-                filtered = new ArrayList<>(_allNights.subList(fromIndex, _allNights.size()));
-            } else {
-                filtered = new ArrayList<>(_allNights);
-            }
+            filtered = days > 0 ? _index.lastDays(days) : _index.getNights();
         } else {
-            filtered = _allNights.stream()
-                    .filter(n -> YearMonth.from(n.getDate()).equals(_currentMonth))
-                    .collect(Collectors.toList());
+            filtered = _index.month(_currentMonth);
         }
 
         filtered = sortedNights(filtered);
@@ -473,7 +516,7 @@ public class MainView extends BorderPane {
             boolean ascending = "asc".equals(_preferences.getSortOrder());
             int targetIndex = ascending ? _nights.size() - 1 : 0;
             _listView.getSelectionModel().select(targetIndex);
-            _listView.scrollTo(targetIndex);
+            scrollTo(targetIndex);
         }
 
         if ("month".equals(mode)) {
@@ -502,15 +545,7 @@ public class MainView extends BorderPane {
             }
         });
 
-        listView.setOnKeyPressed(e -> {
-            if (e.getCode() == KeyCode.ENTER && _editEnabled.get()) {
-                edit();
-            } else if (e.getCode() == KeyCode.DELETE && _removeEnabled.get()) {
-                remove();
-            } else if (e.getCode() == KeyCode.INSERT) {
-                add();
-            }
-        });
+        listView.setOnKeyPressed(this::onKeyPressed);
 
         ContextMenu contextMenu = new ContextMenu();
         MenuItem ctxEdit = new MenuItem(t("ctx.edit"));
@@ -520,8 +555,10 @@ public class MainView extends BorderPane {
         ctxRemove.disableProperty().bind(_removeEnabled.not());
         ctxRemove.setOnAction(e -> remove());
         MenuItem ctxAdd = new MenuItem(t("ctx.add"));
+        ctxAdd.disableProperty().bind(_modifiable.not());
         ctxAdd.setOnAction(e -> add());
         MenuItem ctxDownload = new MenuItem(t("ctx.acquire"));
+        ctxDownload.disableProperty().bind(_modifiable.not());
         ctxDownload.setOnAction(e -> download());
         contextMenu.getItems().addAll(ctxEdit, ctxRemove, new SeparatorMenuItem(), ctxAdd, ctxDownload);
         listView.setContextMenu(contextMenu);
@@ -529,36 +566,92 @@ public class MainView extends BorderPane {
         return listView;
     }
 
+    private void onKeyPressed(KeyEvent e) {
+        if (e.getCode() == KeyCode.ENTER && _editEnabled.get()) {
+            edit();
+        } else if (e.getCode() == KeyCode.DELETE && _removeEnabled.get()) {
+            remove();
+        } else if (e.getCode() == KeyCode.INSERT && _modifiable.get()) {
+            add();
+        }
+    }
+
+    // Shares the items, the selection and the context menu with the list view
+    private TimelineView createTimelineView() {
+        TimelineView timelineView = new TimelineView(_nights, _listView.getSelectionModel(), _renderer);
+        timelineView.setContextMenu(_listView.getContextMenu());
+        timelineView.setOnEdit(() -> {
+            if (_editEnabled.get()) {
+                edit();
+            }
+        });
+        timelineView.setOnKeyPressed(this::onKeyPressed);
+        return timelineView;
+    }
+
+    private Region activeView() {
+        return _preferences.isTimelineView() ? _timelineView : _listView;
+    }
+
+    private void updateView() {
+        _centerBox.getChildren().setAll(_topAxisCanvas, activeView(), _bottomAxisCanvas);
+        _resizeDelay.playFromStart();
+    }
+
+    private double rowWidth() {
+        return _preferences.isTimelineView() ? _timelineView.getContentWidth() : _listView.getWidth() - 4;
+    }
+
+    private void scrollTo(int index) {
+        _listView.scrollTo(index);
+        _timelineView.scrollTo(index);
+    }
+
     // ---- Document ----
 
     void setDocument(Document document) {
         _document = document;
 
-        _allNights = new ArrayList<>(_document.getNights());
-        Collections.sort(_allNights, Night.getComparator());
+        _modifiable.set(!_document.isReadOnly());
+        _statusBar.setSaveStatus("");
+
+        if (_document.isReadOnly()) {
+            _index = new NightIndex(_document.getNights());
+        } else {
+            _index = NightIndex.of(_document.getNights());
+        }
+        _store = null;
+        _summaries = null;
 
-        if ("month".equals(_preferences.getDisplayMode()) && !_allNights.isEmpty()) {
-            boolean hasCurrentMonth = _allNights.stream()
-                    .anyMatch(n -> YearMonth.from(n.getDate()).equals(_currentMonth));
-            if (!hasCurrentMonth) {
-                _currentMonth = YearMonth.from(_allNights.get(_allNights.size() - 1).getDate());
+        LocalDate lastDate = _index.getLastDate();
+        if ("month".equals(_preferences.getDisplayMode()) && lastDate != null) {
+            if (_index.month(_currentMonth).isEmpty()) {
+                _currentMonth = YearMonth.from(lastDate);
             }
         }
 
         applyFilter();
 
         _invoker.reset();
+        _savedVersion = _invoker.getVersion();
+        _history = openHistory();
 
         updateTitle();
         updateCommandActions();
         updateListActions();
         updateStatusBar();
 
-        _listView.requestFocus();
+        activeView().requestFocus();
     }
 
     private boolean isModified() {
-        return !_document.getNights().equals(_allNights);
+        if (_document.isReadOnly()) {
+            return false;
+        }
+        if (!_document.isNew()) {
+            return _autoSaver.isPending() || _autoSaver.isFailed();
+        }
+        return _invoker.getVersion() != _savedVersion;
     }
 
     private void updateTitle() {
@@ -570,48 +663,132 @@ public class MainView extends BorderPane {
     // ---- Commands ----
 
     private void invoke(Command command) {
-        _invoker.invoke(command);
+        record(() -> _invoker.invoke(command));
         updateCommandActions();
-        syncAllNights();
+        _index.update(_removedNights, _addedNights);
         applyFilter();
         int idx = _listView.getSelectionModel().getSelectedIndex();
         if (idx >= 0) {
-            _listView.scrollTo(idx);
+            scrollTo(idx);
         }
         updateListActions();
-        if (!_document.isNew()) {
-            save();
+        recordHistory(command.getName());
+        updateStore();
+        persistChanges();
+    }
+
+    private void record(Runnable action) {
+        _removedNights.clear();
+        _addedNights.clear();
+        _recording = true;
+        try {
+            action.run();
+        } finally {
+            _recording = false;
         }
     }
 
-    private void syncAllNights() {
-        if ("month".equals(_preferences.getDisplayMode())) {
-            List<Night> result = _allNights.stream()
-                    .filter(n -> !YearMonth.from(n.getDate()).equals(_currentMonth))
-                    .collect(Collectors.toList());
-            result.addAll(_nights);
-            Collections.sort(result, Night.getComparator());
-            _allNights = result;
-        } else {
-            _allNights = new ArrayList<>(_nights);
+    private void recordChange(ListChangeListener.Change<? extends Night> c) {
+        while (c.next()) {
+            if (c.wasReplaced()) {
+                recordReplacement(c.getRemoved(), c.getAddedSubList());
+            } else if (!c.wasPermutated()) {
+                _removedNights.addAll(c.getRemoved());
+                _addedNights.addAll(c.getAddedSubList());
+            }
+        }
+        c.reset();
+    }
+
+    // A bulk setAll replaces the whole list, but only the nights that are not in both lists are changes
+    private void recordReplacement(List<? extends Night> removed, List<? extends Night> added) {
+        Map<Night, Integer> counts = new IdentityHashMap<>();
+        for (Night night : removed) {
+            counts.merge(night, 1, Integer::sum);
+        }
+        for (Night night : added) {
+            if (counts.merge(night, -1, Integer::sum) < 0) {
+                _addedNights.add(night);
+            }
+        }
+        for (Night night : removed) {
+            if (counts.merge(night, -1, Integer::sum) >= 0) {
+                _removedNights.add(night);
+            }
+        }
+    }
+
+    // The store is built on the first request and then follows the recorded changes
+    NightStore getStore() {
+        if (_store == null) {
+            _store = new NightStore(_index.getNights());
         }
+        return _store;
+    }
+
+    private SummaryCache getSummaries() {
+        if (_summaries == null) {
+            _summaries = new SummaryCache(getStore());
+        }
+        return _summaries;
+    }
+
+    private void updateStore() {
+        if (_store != null) {
+            _store.update(_removedNights, _addedNights);
+        }
+        if (_summaries != null) {
+            _summaries.invalidate(_removedNights);
+            _summaries.invalidate(_addedNights);
+        }
+    }
+
+    private void persistChanges() {
+        if (_document.isNew() || (_removedNights.isEmpty() && _addedNights.isEmpty())) {
+            return;
+        }
+        _autoSaver.submit(_document, _removedNights, _addedNights, _preferences.isBackupsEnabled());
+        updateTitle();
+    }
+
+    private void autoSaveStateChanged(AutoSaver.State state, IOException error) {
+        switch (state) {
+            case SAVING -> _statusBar.setSaveStatus(t("status.saving"));
+            case SAVED -> _statusBar.setSaveStatus(t("status.saved"));
+            case FAILED -> _statusBar.setSaveStatus(t("status.saveFailed", error.getMessage()));
+        }
+        updateTitle();
+    }
+
+    private void updateUndoLimits() {
+        _invoker.setLimits(_preferences.getUndoLimit(), _preferences.getUndoMemory() * 1024L * 1024L);
     }
 
     private void updateCommandActions() {
-        _undoEnabled.set(_invoker.isUndoAvailable());
-        _redoEnabled.set(_invoker.isRedoAvailable());
+        String undoName = null;
+        if (_invoker.isUndoAvailable()) {
+            undoName = _invoker.getUndoCommandName();
+        } else if (_history != null && _history.isUndoAvailable()) {
+            undoName = _history.getUndoName();
+        }
+        String redoName = null;
+        if (isHistoryRedo()) {
+            redoName = _history.getRedoName();
+        } else if (_invoker.isRedoAvailable()) {
+            redoName = _invoker.getRedoCommandName();
+        }
 
-        String undo = t("action.undo") + (_invoker.isUndoAvailable() ? " " + _invoker.getUndoCommandName() : "");
-        _undoMenuItem.setText(undo);
+        _undoEnabled.set(undoName != null);
+        _redoEnabled.set(redoName != null);
 
-        String redo = t("action.redo") + (_invoker.isRedoAvailable() ? " " + _invoker.getRedoCommandName() : "");
-        _redoMenuItem.setText(redo);
+        _undoMenuItem.setText(t("action.undo") + (undoName == null ? "" : " " + undoName));
+        _redoMenuItem.setText(t("action.redo") + (redoName == null ? "" : " " + redoName));
     }
 
     private void updateListActions() {
         MultipleSelectionModel<Night> sel = _listView.getSelectionModel();
-        _editEnabled.set(sel.getSelectedIndices().size() == 1);
-        _removeEnabled.set(!sel.getSelectedIndices().isEmpty());
+        _editEnabled.set(_modifiable.get() && sel.getSelectedIndices().size() == 1);
+        _removeEnabled.set(_modifiable.get() && !sel.getSelectedIndices().isEmpty());
     }
 
     private void updateStatusBar() {
@@ -631,14 +808,42 @@ public class MainView extends BorderPane {
     }
 
     private void updateRenderer() {
-        _renderer.setNights(new ArrayList<>(_nights));
+        _renderer.setNights(_nights);
+        updateRendering();
+    }
+
+    // The grid range follows the changed nights only
+    private void updateRenderer(ListChangeListener.Change<? extends Night> c) {
+        while (c.next()) {
+            if (!c.wasPermutated()) {
+                _renderer.updateNights(c.getRemoved(), c.getAddedSubList());
+            }
+        }
+        c.reset();
+        updateRendering();
+    }
+
+    private void updateRendering() {
+        recalcResolution();
+        redrawAxes();
+        refreshViews();
+        _renderer.prepare(_nights, this::refreshViews);
+    }
+
+    // Cells are rendered from the nights' geometry, prepared off the FX thread for the new layout
+    private void updateLayout() {
         recalcResolution();
         redrawAxes();
+        _renderer.prepare(_nights, this::refreshViews);
+    }
+
+    private void refreshViews() {
         _listView.refresh();
+        _timelineView.refresh();
     }
 
     private void recalcResolution() {
-        double chartWidth = _listView.getWidth() - 4 - 2 * NightRenderer.H_GAP;
+        double chartWidth = rowWidth() - 2 * NightRenderer.H_GAP;
         int range = _gridTransform.getGridRangeMinutes();
         if (chartWidth > 0 && range > 0) {
             _renderer.setResolution(chartWidth / range);
@@ -646,7 +851,7 @@ public class MainView extends BorderPane {
     }
 
     private void redrawAxes() {
-        double axisWidth = _listView.getWidth() - 4;
+        double axisWidth = rowWidth();
         if (axisWidth > 0) {
             _topAxisCanvas.setWidth(axisWidth);
             _bottomAxisCanvas.setWidth(axisWidth);
@@ -675,6 +880,25 @@ public class MainView extends BorderPane {
         }
     }
 
+    private void openReadOnly() {
+        if (isUserDataSafe()) {
+            FileChooser chooser = new FileChooser();
+            chooser.getExtensionFilters().add(
+                    new FileChooser.ExtensionFilter(t("file.binaryDatabase"), "*." + BinaryArchive.EXTENSION));
+            chooser.setTitle(t("dialog.openDatabase"));
+            File file = chooser.showOpenDialog(_stage);
+            if (file != null) {
+                try {
+                    setDocument(Document.open(file));
+                } catch (FileNotFoundException e) {
+                    showError(t("error.openDatabase"), t("error.fileNotFound", file.getPath()));
+                } catch (IOException e) {
+                    showError(t("error.openDatabase"), t("error.readFile", file.getPath()));
+                }
+            }
+        }
+    }
+
     public void doOpen(File file) {
         try {
             setDocument(Document.load(file));
@@ -686,7 +910,9 @@ public class MainView extends BorderPane {
     }
 
     private boolean save() {
-        if (_document.isNew()) {
+        if (_document.isReadOnly()) {
+            return true;
+        } else if (_document.isNew()) {
             return saveAs();
         } else {
             return doSave(_document.getLocation());
@@ -707,10 +933,15 @@ public class MainView extends BorderPane {
     }
 
     private boolean doSave(File file) {
+        _autoSaver.flush();
         try {
-            Document document = new Document(new ArrayList<>(_allNights));
+            Document document = new Document(new ArrayList<>(_index.getNights()));
             document.saveAs(file, _preferences.isBackupsEnabled());
-            _document = document;
+            if (!_document.isReadOnly()) {
+                _document = document;
+                _autoSaver.reset();
+                followHistory(file);
+            }
             updateTitle();
             return true;
         } catch (FileNotFoundException e) {
@@ -722,6 +953,21 @@ public class MainView extends BorderPane {
         }
     }
 
+    // A saved copy of the archive takes the history along
+    private void followHistory(File file) {
+        try {
+            if (_history == null) {
+                _history = History.open(file, _index.getNights(), _preferences.getUndoLimit(),
+                        _autoSaver.getExecutor());
+            } else if (!_history.getFile().equals(History.fileOf(file))) {
+                _history = _history.copyTo(file);
+            }
+        } catch (IOException e) {
+            _history = null;
+        }
+        updateCommandActions();
+    }
+
     private void importData() {
         FileChooser chooser = createDataFileChooser();
         chooser.setTitle(t("dialog.importData"));
@@ -731,6 +977,8 @@ public class MainView extends BorderPane {
                 List<Night> nights = Document.importData(file);
                 invoke(new Importing(t("command.importing"), _nights,
                         _listView.getSelectionModel(), getNightComparator(), nights));
+            } catch (ImportException e) {
+                showError(t("error.importData"), t("error.importLine", file.getPath(), e.getLine()));
             } catch (IOException e) {
                 showError(t("error.importData"), t("error.importRead", file.getPath()));
             }
@@ -744,7 +992,7 @@ public class MainView extends BorderPane {
         if (file != null) {
             if (isSafeToWrite(file)) {
                 try {
-                    Document.exportData(file, new ArrayList<>(_allNights));
+                    Document.exportData(file, new ArrayList<>(_index.getNights()));
                 } catch (IOException e) {
                     showError(t("error.exportData"), t("error.exportWrite", file.getPath()));
                 }
@@ -811,16 +1059,109 @@ public class MainView extends BorderPane {
                         _listView.getSelectionModel(), getNightComparator(), night)));
     }
 
+    // Steps beyond the commands of the session are read from the history file
     private void undo() {
-        _invoker.undo();
+        if (_invoker.isUndoAvailable()) {
+            record(_invoker::undo);
+            _index.update(_removedNights, _addedNights);
+            moveHistory(-1);
+        } else {
+            try {
+                History.Step step = _history.undo();
+                applyStep(step.added(), step.removed());
+            } catch (IOException e) {
+                discardHistory(e);
+            }
+        }
         updateCommandActions();
-        syncAllNights();
+        updateStore();
+        persistChanges();
     }
 
     private void redo() {
-        _invoker.redo();
+        if (isHistoryRedo()) {
+            try {
+                History.Step step = _history.redo();
+                applyStep(step.removed(), step.added());
+            } catch (IOException e) {
+                discardHistory(e);
+            }
+        } else {
+            record(_invoker::redo);
+            _index.update(_removedNights, _addedNights);
+            moveHistory(1);
+        }
         updateCommandActions();
-        syncAllNights();
+        updateStore();
+        persistChanges();
+    }
+
+    // Applied to the whole archive, as a step may be outside of the displayed nights
+    private void applyStep(List<Night> removed, List<Night> added) {
+        _removedNights.clear();
+        _addedNights.clear();
+        _removedNights.addAll(_index.update(removed, added));
+        _addedNights.addAll(added);
+
+        if ("month".equals(_preferences.getDisplayMode())) {
+            added.stream().map(Night::getDate).filter(Objects::nonNull).findFirst()
+                    .or(() -> removed.stream().map(Night::getDate).filter(Objects::nonNull).findFirst())
+                    .ifPresent(date -> {
+                        _currentMonth = YearMonth.from(date);
+                        saveCurrentMonth();
+                        updateMonthLabel();
+                    });
+        }
+        applyFilter();
+    }
+
+    // ---- History ----
+
+    private History openHistory() {
+        if (_document.isNew() || _document.isReadOnly()) {
+            return null;
+        }
+        try {
+            return History.open(_document.getLocation(), _index.getNights(), _preferences.getUndoLimit(),
+                    _autoSaver.getExecutor());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void recordHistory(String name) {
+        if (_history != null) {
+            try {
+                _history.append(name, _removedNights, _addedNights);
+            } catch (IOException e) {
+                discardHistory(e);
+            }
+        }
+    }
+
+    private void moveHistory(int steps) {
+        if (_history != null) {
+            try {
+                _history.move(steps, _index.getNights());
+            } catch (IOException e) {
+                discardHistory(e);
+            }
+        }
+    }
+
+    private boolean isHistoryRedo() {
+        return _history != null && _history.getRedoCount() > _invoker.getRedoCount();
+    }
+
+    private void discardHistory(IOException e) {
+        History history = _history;
+        _history = null;
+        try {
+            history.delete();
+        } catch (IOException ignored) {
+            // the history is not used anymore anyway
+        }
+        showError(t("error.history"), t("error.historyFile", history.getFile().getPath(), e.getMessage()));
     }
 
     private void selectAll() {
@@ -837,9 +1178,31 @@ public class MainView extends BorderPane {
                         _listView.getSelectionModel(), data)));
     }
 
+    private void statistics() {
+        // The selected nights define the range, or all the displayed nights when there is no multiple selection
+        List<Night> nights = _listView.getSelectionModel().getSelectedItems().size() > 1
+                ? _listView.getSelectionModel().getSelectedItems()
+                : _nights;
+        LocalDate from = null;
+        LocalDate to = null;
+        for (Night night : nights) {
+            LocalDate date = night.getDate();
+            if (date != null) {
+                from = from == null || date.isBefore(from) ? date : from;
+                to = to == null || date.isAfter(to) ? date : to;
+            }
+        }
+        if (from == null) {
+            from = to = LocalDate.now();
+        }
+        new StatisticsDialog(_stage, getSummaries(), from, to).showAndWait();
+    }
+
     private void preferences() {
-        PreferencesDialog dialog = new PreferencesDialog(_stage, _preferences);
+        PreferencesDialog dialog = new PreferencesDialog(_stage, _preferences,
+                _invoker.getSize(), _invoker.getFootprint());
         dialog.showAndWait();
+        updateUndoLimits();
 
         // Recreate GridTransform with new settings
         _gridTransform = createGridTransform();
@@ -908,8 +1271,8 @@ public class MainView extends BorderPane {
         LocalTime alarm = null;
         int window = 20;
         LocalTime toBed = null;
-        if (_preferences.isPrefillEnabled() && !_allNights.isEmpty()) {
-            Night last = _allNights.getLast();
+        if (_preferences.isPrefillEnabled() && !_index.isEmpty()) {
+            Night last = _index.getNights().getLast();
             alarm = last.getAlarm();
             window = last.getWindow();
             toBed = last.getToBed();
@@ -919,7 +1282,7 @@ public class MainView extends BorderPane {
 
     private List<String> getAllConditions() {
         Set<String> unique = new HashSet<>();
-        for (Night night : _allNights) {
+        for (Night night : _index.getNights()) {
             unique.addAll(night.getConditions());
         }
         List<String> sorted = new ArrayList<>(unique);
@@ -938,9 +1301,16 @@ public class MainView extends BorderPane {
     }
 
     private boolean isUserDataSafe() {
-        if (!_allNights.isEmpty() && isModified()) {
+        if (_document.isReadOnly()) {
+            return true;
+        }
+        _autoSaver.flush();
+        if (!_index.isEmpty() && isModified()) {
             return save();
         }
+        if (_document.getJournalSize() > 0) {
+            return doSave(_document.getLocation());
+        }
         return true;
     }
 
@@ -960,8 +1330,9 @@ public class MainView extends BorderPane {
 
     private FileChooser createDocumentFileChooser() {
         FileChooser chooser = new FileChooser();
-        chooser.getExtensionFilters().add(
-                new FileChooser.ExtensionFilter(t("file.database"), "*.xmz"));
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter(t("file.database"), "*.xmz"),
+                new FileChooser.ExtensionFilter(t("file.binaryDatabase"), "*." + BinaryArchive.EXTENSION));
         if (_preferences.hasRecentFiles()) {
             File dir = _preferences.getRecentDirectory();
             if (dir != null && dir.exists()) {
@@ -20,17 +20,20 @@ package com.pavelfatin.sleeparchiver.gui.main;
 
 import com.pavelfatin.sleeparchiver.gui.main.render.NightRenderer;
 import com.pavelfatin.sleeparchiver.model.Night;
-import javafx.scene.canvas.Canvas;
 import javafx.scene.control.ListCell;
+import javafx.scene.image.ImageView;
 
+// Shows cached images of rendered nights, so that scrolling doesn't redraw them
 public class NightCell extends ListCell<Night> {
-    private final Canvas _canvas;
+    private final ImageView _imageView;
     private final NightRenderer _renderer;
 
     public NightCell(NightRenderer renderer, double width) {
         _renderer = renderer;
-        _canvas = new Canvas(width, renderer.getPreferredHeight());
-        setGraphic(_canvas);
+        _imageView = new ImageView();
+        _imageView.setFitWidth(width);
+        _imageView.setFitHeight(renderer.getPreferredHeight());
+        setGraphic(_imageView);
         setPrefHeight(renderer.getPreferredHeight() + 4);
         setStyle("-fx-padding: 0;");
     }
@@ -40,11 +43,20 @@ public class NightCell extends ListCell<Night> {
         super.updateItem(night, empty);
 
         if (empty || night == null) {
+            _imageView.setImage(null);
             setGraphic(null);
         } else {
-            _canvas.setWidth(getListView().getWidth() - 4);
-            _renderer.render(_canvas, night, isSelected(), isFocused());
-            setGraphic(_canvas);
+            int width = (int) Math.max(1, getListView().getWidth() - 4);
+            _imageView.setImage(_renderer.renderTile(night, width, isSelected(), isFocused(), outputScale()));
+            _imageView.setFitWidth(width);
+            setGraphic(_imageView);
         }
     }
+
+    private double outputScale() {
+        if (getScene() == null || getScene().getWindow() == null) {
+            return 1.0;
+        }
+        return getScene().getWindow().getOutputScaleX();
+    }
 }
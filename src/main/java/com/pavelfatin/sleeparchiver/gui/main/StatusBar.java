@@ -21,17 +21,26 @@ package com.pavelfatin.sleeparchiver.gui.main;
 import javafx.geometry.Insets;
 import javafx.scene.control.Label;
 import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
 
 public class StatusBar extends HBox {
     private final Label _label = new Label();
+    private final Label _saveLabel = new Label();
 
     public StatusBar() {
         setPadding(new Insets(4, 8, 4, 8));
         setStyle("-fx-border-color: #cccccc; -fx-border-width: 1 0 0 0;");
-        getChildren().add(_label);
+        Region spacer = new Region();
+        HBox.setHgrow(spacer, Priority.ALWAYS);
+        getChildren().addAll(_label, spacer, _saveLabel);
     }
 
     public void setStatus(String text) {
         _label.setText(text);
     }
+
+    public void setSaveStatus(String text) {
+        _saveLabel.setText(text);
+    }
 }
@@ -0,0 +1,243 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main;
+
+import com.pavelfatin.sleeparchiver.gui.main.render.NightRenderer;
+import com.pavelfatin.sleeparchiver.model.Night;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MultipleSelectionModel;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Region;
+
+/**
+ * Nights painted onto a single viewport-sized canvas, only the visible rows are drawn.
+ * <p>
+ * Shares the items and the selection model with the list view, so that commands work on either.
+ * Memory doesn't depend on the number of nights, as there are no per-row nodes.
+ */
+public class TimelineView extends Region {
+    private static final int ROW_GAP = 4;
+
+    private final ObservableList<Night> _items;
+    private final MultipleSelectionModel<Night> _selection;
+    private final NightRenderer _renderer;
+
+    private final Canvas _canvas = new Canvas();
+    private final ScrollBar _scrollBar = new ScrollBar();
+
+    private ContextMenu _contextMenu;
+    private Runnable _onEdit;
+    private int _anchor = -1;
+
+    public TimelineView(ObservableList<Night> items, MultipleSelectionModel<Night> selection, NightRenderer renderer) {
+        _items = items;
+        _selection = selection;
+        _renderer = renderer;
+
+        _scrollBar.setOrientation(Orientation.VERTICAL);
+        _scrollBar.valueProperty().addListener((obs, oldVal, newVal) -> paint());
+        getChildren().addAll(_canvas, _scrollBar);
+
+        setFocusTraversable(true);
+        setStyle("-fx-background-color: white;");
+
+        _items.addListener((ListChangeListener<Night>) c -> requestLayout());
+        _selection.getSelectedIndices().addListener((ListChangeListener<Integer>) c -> paint());
+        focusedProperty().addListener((obs, oldVal, newVal) -> paint());
+
+        addEventHandler(ScrollEvent.SCROLL, this::onScroll);
+        addEventHandler(MouseEvent.MOUSE_PRESSED, this::onMousePressed);
+        addEventHandler(KeyEvent.KEY_PRESSED, this::onKeyPressed);
+        setOnContextMenuRequested(e -> {
+            if (_contextMenu != null) {
+                _contextMenu.show(this, e.getScreenX(), e.getScreenY());
+            }
+        });
+    }
+
+    public void setContextMenu(ContextMenu contextMenu) {
+        _contextMenu = contextMenu;
+    }
+
+    public void setOnEdit(Runnable onEdit) {
+        _onEdit = onEdit;
+    }
+
+    /**
+     * @return the width available to the rows
+     */
+    public double getContentWidth() {
+        return Math.max(0, getWidth() - _scrollBar.prefWidth(-1));
+    }
+
+    public void refresh() {
+        paint();
+    }
+
+    public void scrollTo(int index) {
+        double top = rowTop(index);
+        double bottom = top + rowHeight();
+        double offset = _scrollBar.getValue();
+        if (top < offset) {
+            _scrollBar.setValue(top);
+        } else if (bottom > offset + _canvas.getHeight()) {
+            _scrollBar.setValue(Math.max(0, bottom - _canvas.getHeight()));
+        }
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double width = getContentWidth();
+        double height = getHeight();
+
+        _scrollBar.resizeRelocate(width, 0, getWidth() - width, height);
+        _canvas.setWidth(width);
+        _canvas.setHeight(height);
+
+        double max = Math.max(0, (double) _items.size() * rowHeight() - height);
+        _scrollBar.setMax(max);
+        _scrollBar.setVisibleAmount(max == 0 ? 0 : height * max / (max + height));
+        _scrollBar.setBlockIncrement(height);
+        _scrollBar.setUnitIncrement(rowHeight() / 4.0);
+        if (_scrollBar.getValue() > max) {
+            _scrollBar.setValue(max);
+        }
+        paint();
+    }
+
+    private void paint() {
+        GraphicsContext g = _canvas.getGraphicsContext2D();
+        double width = _canvas.getWidth();
+        double height = _canvas.getHeight();
+        g.clearRect(0, 0, width, height);
+
+        double offset = _scrollBar.getValue();
+        int rowHeight = rowHeight();
+        int focusedIndex = isFocused() ? _selection.getSelectedIndex() : -1;
+        int first = (int) (offset / rowHeight);
+        int last = Math.min(_items.size() - 1, (int) ((offset + height) / rowHeight));
+
+        for (int i = first; i <= last; i++) {
+            g.save();
+            g.translate(0, rowTop(i) - offset + ROW_GAP / 2.0);
+            g.beginPath();
+            g.rect(0, 0, width, _renderer.getPreferredHeight());
+            g.clip();
+            _renderer.render(g, width, _renderer.getPreferredHeight(), _items.get(i),
+                    _selection.isSelected(i), i == focusedIndex);
+            g.restore();
+        }
+    }
+
+    private int rowHeight() {
+        return _renderer.getPreferredHeight() + ROW_GAP;
+    }
+
+    private double rowTop(int index) {
+        return (double) index * rowHeight();
+    }
+
+    private int rowAt(double y) {
+        int index = (int) ((y + _scrollBar.getValue()) / rowHeight());
+        return y >= 0 && index < _items.size() ? index : -1;
+    }
+
+    private void onScroll(ScrollEvent e) {
+        _scrollBar.setValue(Math.clamp(_scrollBar.getValue() - e.getDeltaY(), 0, _scrollBar.getMax()));
+        e.consume();
+    }
+
+    private void onMousePressed(MouseEvent e) {
+        requestFocus();
+        int index = rowAt(e.getY());
+        if (index < 0) {
+            return;
+        }
+        if (e.getButton() == MouseButton.PRIMARY) {
+            if (e.isShortcutDown()) {
+                if (_selection.isSelected(index)) {
+                    _selection.clearSelection(index);
+                } else {
+                    _selection.select(index);
+                }
+                _anchor = index;
+            } else if (e.isShiftDown() && _anchor >= 0) {
+                select(_anchor, index);
+            } else {
+                _selection.clearAndSelect(index);
+                _anchor = index;
+            }
+            if (e.getClickCount() == 2 && _onEdit != null) {
+                _onEdit.run();
+            }
+        } else if (e.getButton() == MouseButton.SECONDARY && !_selection.isSelected(index)) {
+            _selection.clearAndSelect(index);
+            _anchor = index;
+        }
+    }
+
+    private void onKeyPressed(KeyEvent e) {
+        if (_items.isEmpty()) {
+            return;
+        }
+        int current = _selection.getSelectedIndex();
+        int page = Math.max(1, (int) (_canvas.getHeight() / rowHeight()));
+        int target = switch (e.getCode()) {
+            case UP -> current - 1;
+            case DOWN -> current + 1;
+            case PAGE_UP -> current - page;
+            case PAGE_DOWN -> current + page;
+            case HOME -> 0;
+            case END -> _items.size() - 1;
+            default -> Integer.MIN_VALUE;
+        };
+        if (target == Integer.MIN_VALUE) {
+            return;
+        }
+        target = Math.clamp(target, 0, _items.size() - 1);
+        if (e.isShiftDown() && _anchor >= 0) {
+            select(_anchor, target);
+        } else {
+            _selection.clearAndSelect(target);
+            _anchor = target;
+        }
+        scrollTo(target);
+        e.consume();
+    }
+
+    // Selected in order from the anchor, so that the end becomes the selected index
+    private void select(int from, int to) {
+        int step = from <= to ? 1 : -1;
+        int[] rest = new int[Math.abs(to - from)];
+        for (int i = 0; i < rest.length; i++) {
+            rest[i] = from + step * (i + 1);
+        }
+        _selection.clearSelection();
+        _selection.selectIndices(from, rest);
+    }
+}
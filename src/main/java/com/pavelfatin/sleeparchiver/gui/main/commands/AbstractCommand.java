@@ -19,6 +19,11 @@
 package com.pavelfatin.sleeparchiver.gui.main.commands;
 
 public abstract class AbstractCommand implements Command {
+    // Nights are counted in full, even though most of them are shared with the list (see NightFootprint)
+    private static final long NIGHT_BYTES = 128;
+    private static final long INDEX_BYTES = 16;
+    private static final long COMMAND_BYTES = 64;
+
     private final String _name;
 
     protected AbstractCommand(String name) {
@@ -28,4 +33,8 @@ public abstract class AbstractCommand implements Command {
     public String getName() {
         return _name;
     }
+
+    protected static long footprintOf(int nights, int indices) {
+        return COMMAND_BYTES + nights * NIGHT_BYTES + indices * INDEX_BYTES;
+    }
 }
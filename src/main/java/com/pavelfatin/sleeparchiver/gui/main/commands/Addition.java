@@ -45,4 +45,8 @@ public class Addition extends ListCommand<Night> {
     public void doRevert() {
         getItems().remove(_insertionIndex);
     }
+
+    public long getFootprint() {
+        return footprintOf(1, 0);
+    }
 }
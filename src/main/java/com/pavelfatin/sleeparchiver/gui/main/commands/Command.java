@@ -24,4 +24,9 @@ public interface Command {
     void execute();
 
     void revert();
+
+    /**
+     * @return an estimate of the memory held by the command, in bytes
+     */
+    long getFootprint();
 }
@@ -51,4 +51,8 @@ public class Editing extends ListCommand<Night> {
         getItems().remove(_insertionIndex);
         getItems().add(_editingIndex, _backup);
     }
+
+    public long getFootprint() {
+        return footprintOf(2, 0);
+    }
 }
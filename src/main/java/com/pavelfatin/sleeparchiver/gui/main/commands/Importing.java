@@ -23,38 +23,65 @@ import javafx.collections.ObservableList;
 import javafx.scene.control.MultipleSelectionModel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class Importing extends ListCommand<Night> {
     private final Comparator<Night> _order;
     private final List<Night> _data;
-    private List<Integer> _insertionIndices;
 
     public Importing(String name, ObservableList<Night> items, MultipleSelectionModel<Night> selection,
                      Comparator<Night> order, List<Night> nights) {
         super(name, items, selection);
         _order = order;
         _data = new ArrayList<>(nights);
+        _data.sort(order);
     }
 
+    // Both lists are sorted, so they are merged in one pass and replaced in one change.
+    // Imported nights go after equal existing ones, as if added one by one.
     public void doExecute() {
-        _insertionIndices = new ArrayList<>();
-        for (Night night : _data) {
-            int index = findIndexFor(night, _order);
-            getItems().add(index, night);
-            _insertionIndices.add(index);
+        List<Night> items = getItems();
+        List<Night> merged = new ArrayList<>(items.size() + _data.size());
+        int[] indices = new int[_data.size()];
+        int i = 0;
+        for (int j = 0; j < _data.size(); j++) {
+            Night night = _data.get(j);
+            while (i < items.size() && _order.compare(night, items.get(i)) >= 0) {
+                merged.add(items.get(i++));
+            }
+            indices[j] = merged.size();
+            merged.add(night);
         }
+        merged.addAll(items.subList(i, items.size()));
+
+        getItems().setAll(merged);
 
         getSelection().clearSelection();
-        for (int index : _insertionIndices) {
-            getSelection().select(index);
+        if (indices.length > 0) {
+            getSelection().selectIndices(indices[0], Arrays.copyOfRange(indices, 1, indices.length));
         }
     }
 
+    // Imported nights are told apart from equal existing ones by identity
     public void doRevert() {
-        for (int index : reversed(sorted(_insertionIndices))) {
-            getItems().remove(index);
+        Set<Night> imported = Collections.newSetFromMap(new IdentityHashMap<>());
+        imported.addAll(_data);
+
+        List<Night> remaining = new ArrayList<>(getItems().size());
+        for (Night night : getItems()) {
+            if (!imported.contains(night)) {
+                remaining.add(night);
+            }
         }
+        getItems().setAll(remaining);
+    }
+
+    public long getFootprint() {
+        return footprintOf(_data.size(), 0);
     }
 }
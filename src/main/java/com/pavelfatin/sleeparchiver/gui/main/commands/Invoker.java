@@ -21,16 +21,34 @@ package com.pavelfatin.sleeparchiver.gui.main.commands;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Undo history within a step and a memory budget. The oldest commands are evicted first,
+ * but the current one is always kept, and so are the reverted ones that can be redone.
+ */
 public class Invoker {
     private List<Command> _commands;
+    // The state after each command, numbered by a counter of modifications
+    private List<Long> _versions;
+    private long _baseVersion;
+    private long _modifications;
     private int _lastCommandIndex;
+    private int _stepLimit = Integer.MAX_VALUE;
+    private long _memoryLimit = Long.MAX_VALUE;
 
     public Invoker() {
         reset();
     }
 
+    public void setLimits(int steps, long bytes) {
+        _stepLimit = steps;
+        _memoryLimit = bytes;
+        trim();
+    }
+
     public void reset() {
         _commands = new ArrayList<>();
+        _versions = new ArrayList<>();
+        _baseVersion = ++_modifications;
         _lastCommandIndex = -1;
     }
 
@@ -40,10 +58,56 @@ public class Invoker {
         int highIndex = _commands.size() - 1;
         if (_lastCommandIndex < highIndex) {
             _commands.subList(_lastCommandIndex + 1, highIndex + 1).clear();
+            _versions.subList(_lastCommandIndex + 1, highIndex + 1).clear();
         }
 
         _commands.add(command);
-        _lastCommandIndex = _commands.indexOf(command);
+        _versions.add(++_modifications);
+        _lastCommandIndex = _commands.size() - 1;
+
+        trim();
+    }
+
+    private void trim() {
+        int evicted = 0;
+        long footprint = getFootprint();
+        while (evicted < _lastCommandIndex
+                && (_commands.size() - evicted > _stepLimit || footprint > _memoryLimit)) {
+            footprint -= _commands.get(evicted).getFootprint();
+            evicted++;
+        }
+        if (evicted > 0) {
+            _baseVersion = _versions.get(evicted - 1);
+            _commands.subList(0, evicted).clear();
+            _versions.subList(0, evicted).clear();
+            _lastCommandIndex -= evicted;
+        }
+    }
+
+    /**
+     * @return an estimate of the memory held by the history, in bytes
+     */
+    public long getFootprint() {
+        long footprint = 0;
+        for (Command command : _commands) {
+            footprint += command.getFootprint();
+        }
+        return footprint;
+    }
+
+    /**
+     * @return the number of the current state, equal only when undo or redo returns to the same state
+     */
+    public long getVersion() {
+        return _lastCommandIndex < 0 ? _baseVersion : _versions.get(_lastCommandIndex);
+    }
+
+    public int getSize() {
+        return _commands.size();
+    }
+
+    public int getRedoCount() {
+        return _commands.size() - _lastCommandIndex - 1;
     }
 
     public void undo() {
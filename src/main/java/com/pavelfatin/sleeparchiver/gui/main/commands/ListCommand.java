@@ -58,15 +58,19 @@ public abstract class ListCommand<T> extends AbstractCommand {
         return sorted;
     }
 
+    // Items are kept sorted, so the row goes after all the equal ones
     protected int findIndexFor(T row, Comparator<T> comparator) {
-        int i;
-        for (i = 0; i < _items.size(); i++) {
-            T each = _items.get(i);
-            if (comparator.compare(row, each) < 0) {
-                break;
+        int low = 0;
+        int high = _items.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(row, _items.get(middle)) < 0) {
+                high = middle;
+            } else {
+                low = middle + 1;
             }
         }
-        return i;
+        return low;
     }
 
     public void execute() {
@@ -59,4 +59,8 @@ public class Removal extends ListCommand<Night> {
             getItems().add(index, it.next());
         }
     }
+
+    public long getFootprint() {
+        return footprintOf(_removalIndices.size(), _removalIndices.size());
+    }
 }
@@ -23,11 +23,21 @@ import javafx.collections.ObservableList;
 import javafx.scene.control.MultipleSelectionModel;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Replaces the items with an edited copy of them.
+ * <p>
+ * Only the positions that hold unequal nights are kept, so the history shares
+ * the unchanged nights with the list instead of holding two copies of it.
+ * Full copies are kept only when the edit changes the number of items.
+ */
 public class Replacing extends ListCommand<Night> {
-    private final List<Night> _replacement;
-    private List<Night> _original;
+    private List<Night> _replacement;
+    private int[] _indices;
+    private Night[] _before;
+    private Night[] _after;
 
     public Replacing(String name, ObservableList<Night> items, MultipleSelectionModel<Night> selection,
                      List<Night> replacement) {
@@ -36,9 +46,12 @@ public class Replacing extends ListCommand<Night> {
     }
 
     public void doExecute() {
-        _original = new ArrayList<>(getItems());
+        if (_replacement != null) {
+            computeDelta();
+            _replacement = null;
+        }
         List<Integer> indices = new ArrayList<>(getSelection().getSelectedIndices());
-        getItems().setAll(_replacement);
+        apply(_after);
         getSelection().clearSelection();
         for (int index : indices) {
             if (index >= 0 && index < getItems().size()) {
@@ -48,6 +61,46 @@ public class Replacing extends ListCommand<Night> {
     }
 
     public void doRevert() {
-        getItems().setAll(_original);
+        apply(_before);
+    }
+
+    public long getFootprint() {
+        int nights = _replacement == null ? _before.length + _after.length : _replacement.size();
+        return footprintOf(nights, _indices == null ? 0 : _indices.length);
+    }
+
+    private void computeDelta() {
+        List<Night> items = getItems();
+        if (items.size() != _replacement.size()) {
+            _before = items.toArray(new Night[0]);
+            _after = _replacement.toArray(new Night[0]);
+            return;
+        }
+        int count = 0;
+        int[] indices = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            if (!items.get(i).equals(_replacement.get(i))) {
+                indices[count++] = i;
+            }
+        }
+        _indices = Arrays.copyOf(indices, count);
+        _before = new Night[count];
+        _after = new Night[count];
+        for (int k = 0; k < count; k++) {
+            _before[k] = items.get(_indices[k]);
+            _after[k] = _replacement.get(_indices[k]);
+        }
+    }
+
+    private void apply(Night[] nights) {
+        if (_indices == null) {
+            getItems().setAll(nights);
+            return;
+        }
+        List<Night> result = new ArrayList<>(getItems());
+        for (int k = 0; k < _indices.length; k++) {
+            result.set(_indices[k], nights[k]);
+        }
+        getItems().setAll(result);
     }
 }
@@ -0,0 +1,142 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.render;
+
+import com.pavelfatin.sleeparchiver.model.Metrics;
+import com.pavelfatin.sleeparchiver.model.Night;
+import com.pavelfatin.sleeparchiver.model.SleepSpan;
+import javafx.scene.paint.Color;
+
+import java.util.List;
+
+/**
+ * Horizontal positions of the spans of a complete night, ready to be drawn.
+ * Immutable, so it can be computed off the FX thread.
+ */
+final class Geometry {
+    private final int[] _begins;
+    private final int[] _ends;
+    private final int[] _moments;
+    private final int[] _lengths;
+    private final Color[] _colors;
+    private final int _windowX;
+    private final int _windowWidth;
+
+    private Geometry(int[] begins, int[] ends, int[] moments, int[] lengths, Color[] colors,
+                     int windowX, int windowWidth) {
+        _begins = begins;
+        _ends = ends;
+        _moments = moments;
+        _lengths = lengths;
+        _colors = colors;
+        _windowX = windowX;
+        _windowWidth = windowWidth;
+    }
+
+    /**
+     * @param transform used by the caller only, as it's set to the night
+     */
+    static Geometry of(Night night, Transform transform, int offset) {
+        transform.setNight(night);
+        Metrics metrics = night.getMetrics();
+        List<SleepSpan> spans = metrics.getSpans();
+
+        int count = spans.size();
+        int[] begins = new int[count];
+        int[] ends = new int[count];
+        int[] moments = new int[count];
+        int[] lengths = new int[count];
+        Color[] colors = new Color[count];
+        for (int i = 0; i < count; i++) {
+            SleepSpan span = spans.get(i);
+            begins[i] = offset + transform.toX(span.begin());
+            ends[i] = offset + transform.toX(span.end());
+            moments[i] = span.begin().time().getHour() * 60 + span.begin().time().getMinute();
+            lengths[i] = span.toMinutes();
+            colors[i] = colorOf(lengths[i]);
+        }
+
+        SleepSpan total = metrics.getTotalSpan();
+        int totalEnd = offset + transform.toX(total.end());
+        int windowWidth = night.hasWindow() ? transform.toWidth(night.getWindow()) : 0;
+
+        return new Geometry(begins, ends, moments, lengths, colors, totalEnd - windowWidth, windowWidth);
+    }
+
+    int size() {
+        return _begins.length;
+    }
+
+    int begin(int i) {
+        return _begins[i];
+    }
+
+    int width(int i) {
+        return _ends[i] - _begins[i];
+    }
+
+    /**
+     * @return minutes of the day at the beginning of the span
+     */
+    int moment(int i) {
+        return _moments[i];
+    }
+
+    int length(int i) {
+        return _lengths[i];
+    }
+
+    Color color(int i) {
+        return _colors[i];
+    }
+
+    boolean hasWindow() {
+        return _windowWidth > 0;
+    }
+
+    int windowX() {
+        return _windowX;
+    }
+
+    int windowWidth() {
+        return _windowWidth;
+    }
+
+    private static Color colorOf(int m) {
+        if (m < 15) {
+            double t = m / 15.0;
+            return Color.rgb(
+                    (int) (240 - t * 40),
+                    (int) (100 + t * 70),
+                    (int) (60 + t * 50));
+        } else if (m <= 45) {
+            double t = (m - 15) / 30.0;
+            return Color.rgb(
+                    (int) (120 - t * 50),
+                    (int) (190 - t * 40),
+                    (int) (235 - t * 15));
+        } else {
+            double t = Math.min((m - 45) / 60.0, 1.0);
+            return Color.rgb(
+                    (int) (60 + t * 20),
+                    (int) (80 - t * 20),
+                    (int) (190 - t * 20));
+        }
+    }
+}
@@ -50,19 +50,10 @@ public class GridTransform extends Transform {
     }
 
     @Override
-    public void setNights(List<Night> nights) {
-        int dataMin = Integer.MAX_VALUE;
-        int dataMax = 0;
-        boolean hasData = false;
-        for (Night night : nights) {
-            if (night.isComplete()) {
-                int first = night.getMetrics().getFirstInstant().toMinutes();
-                int last = night.getMetrics().getLastInstant().toMinutes();
-                dataMin = Math.min(dataMin, first);
-                dataMax = Math.max(dataMax, last);
-                hasData = true;
-            }
-        }
+    protected void rangeChanged() {
+        boolean hasData = !_range.isEmpty();
+        int dataMin = hasData ? _range.getMin() : Integer.MAX_VALUE;
+        int dataMax = hasData ? _range.getMax() : 0;
 
         if (_manual) {
             // Manual: use fixed grid, expand if data goes beyond
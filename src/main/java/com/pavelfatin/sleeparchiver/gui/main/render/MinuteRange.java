@@ -0,0 +1,97 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.render;
+
+import com.pavelfatin.sleeparchiver.model.Metrics;
+import com.pavelfatin.sleeparchiver.model.Night;
+
+import java.util.Collection;
+import java.util.TreeMap;
+
+/**
+ * Multisets of the first and last instants of complete nights, so that the bounds
+ * follow added and removed nights in O(log n). Incomplete nights are ignored.
+ */
+public class MinuteRange {
+    private final TreeMap<Integer, Integer> _firsts = new TreeMap<>();
+    private final TreeMap<Integer, Integer> _lasts = new TreeMap<>();
+
+    public void clear() {
+        _firsts.clear();
+        _lasts.clear();
+    }
+
+    public void addAll(Collection<? extends Night> nights) {
+        for (Night night : nights) {
+            add(night);
+        }
+    }
+
+    public void removeAll(Collection<? extends Night> nights) {
+        for (Night night : nights) {
+            remove(night);
+        }
+    }
+
+    public void add(Night night) {
+        if (night.isComplete()) {
+            Metrics metrics = night.getMetrics();
+            _firsts.merge(metrics.getFirstInstant().toMinutes(), 1, Integer::sum);
+            _lasts.merge(metrics.getLastInstant().toMinutes(), 1, Integer::sum);
+        }
+    }
+
+    public void remove(Night night) {
+        if (night.isComplete()) {
+            Metrics metrics = night.getMetrics();
+            decrement(_firsts, metrics.getFirstInstant().toMinutes());
+            decrement(_lasts, metrics.getLastInstant().toMinutes());
+        }
+    }
+
+    public boolean isEmpty() {
+        return _firsts.isEmpty();
+    }
+
+    /**
+     * @return the earliest first instant, in minutes
+     */
+    public int getMin() {
+        return _firsts.firstKey();
+    }
+
+    /**
+     * @return the latest last instant, in minutes
+     */
+    public int getMax() {
+        return _lasts.lastKey();
+    }
+
+    private static void decrement(TreeMap<Integer, Integer> counts, int minutes) {
+        Integer count = counts.get(minutes);
+        if (count == null) {
+            return;
+        }
+        if (count == 1) {
+            counts.remove(minutes);
+        } else {
+            counts.put(minutes, count - 1);
+        }
+    }
+}
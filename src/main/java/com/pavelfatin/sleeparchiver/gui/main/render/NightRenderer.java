@@ -19,20 +19,33 @@
 package com.pavelfatin.sleeparchiver.gui.main.render;
 
 import com.pavelfatin.sleeparchiver.model.*;
+import javafx.application.Platform;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
-import javafx.scene.text.Text;
+import javafx.scene.transform.Scale;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.TextStyle;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 
 public class NightRenderer {
     public static final int H_GAP = 11;
@@ -60,30 +73,120 @@ public class NightRenderer {
 
     private static final int MIN_MOMENTS_SPACE = 3;
 
+    private static final int BAR_Y = 53;
+    private static final int BAR_HEIGHT = 22;
+
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
+    // About 40 MB of tiles
+    private static final long TILE_PIXELS = 10_000_000L;
+
+    // Labels of moments and lengths, by minutes
+    private static final String[] MOMENT_LABELS = new String[24 * 60];
+    private static final String[] LENGTH_LABELS = new String[24 * 60];
+
+    static {
+        for (int i = 0; i < MOMENT_LABELS.length; i++) {
+            MOMENT_LABELS[i] = String.format("%d:%02d", i / 60, i % 60);
+            LENGTH_LABELS[i] = i >= 60 ? String.format("%dч %dм", i / 60, i % 60) : String.format("%dм", i);
+        }
+    }
+
     private Transform _transform;
 
+    private final TileCache _tiles = new TileCache(TILE_PIXELS);
+    private final Canvas _tileCanvas = new Canvas();
+    private Layout _layout;
+
+    private final Function<Font, TextMeasure> _measureFactory;
+    private final Map<Font, TextMeasure> _measures = new HashMap<>();
+
+    private final ExecutorService _executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Prepared for the current layout, nights are matched by identity
+    private Map<Night, Geometry> _geometries = Collections.emptyMap();
+    private Future<?> _preparing;
+
+    public NightRenderer() {
+        this(TextMeasure::new);
+    }
+
+    // For comparing ways of measuring the labels
+    NightRenderer(Function<Font, TextMeasure> measureFactory) {
+        _measureFactory = measureFactory;
+    }
+
     public void setTransform(Transform transform) {
         _transform = transform;
+        checkLayout();
     }
 
     public void setNights(List<Night> nights) {
-        _transform.setNights(completeOf(nights));
+        _transform.setNights(nights);
+        checkLayout();
     }
 
-    private static List<Night> completeOf(List<Night> nights) {
-        List<Night> complete = new ArrayList<>();
-        for (Night night : nights) {
-            if (night.isComplete()) {
-                complete.add(night);
-            }
-        }
-        return complete;
+    public void updateNights(List<? extends Night> removed, List<? extends Night> added) {
+        _transform.updateNights(removed, added);
+        checkLayout();
     }
 
     public void setResolution(double resolution) {
         _transform.setResolution(resolution);
+        checkLayout();
+    }
+
+    // Tiles are kept while nights are drawn at the same positions
+    private void checkLayout() {
+        Layout layout = Layout.of(_transform);
+        if (!layout.equals(_layout)) {
+            _layout = layout;
+            _tiles.clear();
+            _geometries = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Computes positions of the nights' spans on a background thread, then runs the callback
+     * on the FX thread, unless the layout has changed meanwhile. Nights that are not prepared
+     * are still rendered, their positions are computed in place.
+     */
+    public void prepare(List<Night> nights, Runnable onReady) {
+        if (_preparing != null) {
+            _preparing.cancel(true);
+        }
+        if (_layout == null) {
+            checkLayout();
+        }
+        Layout layout = _layout;
+        Transform transform = _transform.copy();
+        List<Night> snapshot = new ArrayList<>(nights);
+
+        _preparing = _executor.submit(() -> {
+            Map<Night, Geometry> geometries = new IdentityHashMap<>();
+            for (Night night : snapshot) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                if (night.isComplete()) {
+                    geometries.put(night, Geometry.of(night, transform, H_GAP));
+                }
+            }
+            Platform.runLater(() -> {
+                if (layout.equals(_layout)) {
+                    _geometries = geometries;
+                    onReady.run();
+                }
+            });
+        });
+    }
+
+    private Geometry geometryOf(Night night) {
+        Geometry geometry = _geometries.get(night);
+        return geometry == null ? Geometry.of(night, _transform, H_GAP) : geometry;
     }
 
     public int getPreferredHeight() {
@@ -94,17 +197,39 @@ public class NightRenderer {
         return H_GAP + _transform.getPreferredWidth(nights) + H_GAP;
     }
 
-    private int toX(SleepInstant instant) {
-        return H_GAP + _transform.toX(instant);
+    /**
+     * @return the night rendered as by {@link #render}, cached until the layout changes
+     */
+    public Image renderTile(Night night, int width, boolean selected, boolean focused, double scale) {
+        if (_layout == null || !Objects.equals(_layout.locale(), Locale.getDefault())) {
+            checkLayout();
+        }
+        Image tile = _tiles.get(night, width, selected, focused, scale);
+        if (tile == null) {
+            _tileCanvas.setWidth(width);
+            _tileCanvas.setHeight(ROW_HEIGHT);
+            render(_tileCanvas, night, selected, focused);
+
+            SnapshotParameters parameters = new SnapshotParameters();
+            parameters.setFill(Color.TRANSPARENT);
+            parameters.setTransform(new Scale(scale, scale));
+            tile = _tileCanvas.snapshot(parameters,
+                    new WritableImage((int) Math.ceil(width * scale), (int) Math.ceil(ROW_HEIGHT * scale)));
+            _tiles.put(night, width, selected, focused, scale, tile);
+        }
+        return tile;
     }
 
     public void render(Canvas canvas, Night night, boolean selected, boolean focused) {
         GraphicsContext g = canvas.getGraphicsContext2D();
-        double w = canvas.getWidth();
-        double h = canvas.getHeight();
-
-        g.clearRect(0, 0, w, h);
+        g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        render(g, canvas.getWidth(), canvas.getHeight(), night, selected, focused);
+    }
 
+    /**
+     * Draws the night at the origin of the context, which is not cleared beforehand.
+     */
+    public void render(GraphicsContext g, double w, double h, Night night, boolean selected, boolean focused) {
         drawFrame(g, w, h, selected, focused);
 
         LocalDate date = night.getDate();
@@ -124,18 +249,16 @@ public class NightRenderer {
 
             drawEquation(g, 208, 302, 22, metrics);
 
-            _transform.setNight(night);
+            Geometry geometry = geometryOf(night);
 
-            List<SleepSpan> spans = night.getMetrics().getSpans();
-
-            drawBars(g, spans);
-            drawGaps(g, spans, selected);
-            if (night.hasWindow()) {
-                drawWindow(g, night);
+            drawBars(g, geometry);
+            drawGaps(g, geometry, selected);
+            if (geometry.hasWindow()) {
+                drawWindow(g, geometry);
             }
             drawTimeGrid(g, h);
-            drawMoments(g, spans);
-            drawLengths(g, spans);
+            drawMoments(g, geometry);
+            drawLengths(g, geometry);
         }
     }
 
@@ -251,79 +374,58 @@ public class NightRenderer {
         }
     }
 
-    private void drawMoments(GraphicsContext g, List<SleepSpan> spans) {
+    private void drawMoments(GraphicsContext g, Geometry geometry) {
         g.setFont(FONT_PLAIN);
         g.setFill(Color.BLACK);
-        for (SleepSpan span : spans) {
-            String moment = String.format("%d:%02d",
-                    span.begin().time().getHour(), span.begin().time().getMinute());
-            double[] r = rectangleOf(span);
-            if (r[2] > (textWidth(moment, FONT_PLAIN) + MIN_MOMENTS_SPACE)) {
-                g.fillText(moment, r[0], r[1] - 4);
+        for (int i = 0; i < geometry.size(); i++) {
+            String moment = MOMENT_LABELS[geometry.moment(i)];
+            if (geometry.width(i) > (textWidth(moment, FONT_PLAIN) + MIN_MOMENTS_SPACE)) {
+                g.fillText(moment, geometry.begin(i), BAR_Y - 4);
             }
         }
     }
 
-    private void drawLengths(GraphicsContext g, List<SleepSpan> spans) {
+    private void drawLengths(GraphicsContext g, Geometry geometry) {
         g.setFont(FONT_PLAIN);
         g.setFill(Color.BLACK);
-        for (SleepSpan span : spans) {
-            int mins = span.toMinutes();
-            String length = mins >= 60
-                    ? String.format("%dч %dм", mins / 60, mins % 60)
-                    : String.format("%dм", mins);
+        double th = textHeight(FONT_PLAIN);
+        for (int i = 0; i < geometry.size(); i++) {
+            int mins = geometry.length(i);
+            String length = mins < LENGTH_LABELS.length
+                    ? LENGTH_LABELS[mins]
+                    : String.format("%dч %dм", mins / 60, mins % 60);
             double tw = textWidth(length, FONT_PLAIN);
-            double th = textHeight(length, FONT_PLAIN);
-            double[] r = rectangleOf(span);
-            if (r[2] > tw) {
+            int width = geometry.width(i);
+            if (width > tw) {
                 g.fillText(length,
-                        r[0] + Math.round((r[2] - tw) / 2),
-                        r[1] + r[3] + th + 4);
+                        geometry.begin(i) + Math.round((width - tw) / 2),
+                        BAR_Y + BAR_HEIGHT + th + 4);
             }
         }
     }
 
-    private void drawBars(GraphicsContext g, List<SleepSpan> spans) {
-        for (SleepSpan span : spans) {
-            double[] r = rectangleOf(span);
-            g.setFill(colorOf(span));
-            g.fillRect(r[0], r[1], r[2], r[3]);
+    private void drawBars(GraphicsContext g, Geometry geometry) {
+        for (int i = 0; i < geometry.size(); i++) {
+            g.setFill(geometry.color(i));
+            g.fillRect(geometry.begin(i), BAR_Y, geometry.width(i), BAR_HEIGHT);
         }
     }
 
-    private void drawGaps(GraphicsContext g, List<SleepSpan> spans, boolean selected) {
+    private void drawGaps(GraphicsContext g, Geometry geometry, boolean selected) {
         g.setFill(backgroundOf(selected));
-        for (SleepSpan span : spans) {
-            double[] r = rectangleOf(span);
-            g.fillRect(r[0] - 1, r[1], 3, r[3]);
+        for (int i = 0; i < geometry.size(); i++) {
+            g.fillRect(geometry.begin(i) - 1, BAR_Y, 3, BAR_HEIGHT);
         }
     }
 
-    private void drawWindow(GraphicsContext g, Night night) {
+    private void drawWindow(GraphicsContext g, Geometry geometry) {
         g.setStroke(Color.RED);
         g.setLineWidth(1);
         g.setLineDashes(2);
-        double[] alarm = alarmRectangleOf(night);
-        g.strokeRect(alarm[0], alarm[1], alarm[2] - 1, alarm[3] - 1);
+        g.strokeRect(geometry.windowX(), BAR_Y, geometry.windowWidth() - 1, BAR_HEIGHT - 1);
         g.setLineDashes(null);
     }
 
-    private double[] alarmRectangleOf(Night night) {
-        double[] result = rectangleOf(night.getMetrics().getTotalSpan());
-        int width = _transform.toWidth(night.getWindow());
-        result[0] = result[0] + result[2] - width;
-        result[2] = width;
-        return result;
-    }
-
-    private double[] rectangleOf(SleepSpan span) {
-        int x1 = toX(span.begin());
-        int x2 = toX(span.end());
-        int y1 = 53;
-        int y2 = y1 + 22;
-        return new double[]{x1, y1, x2 - x1, y2 - y1};
-    }
-
     private void drawTimeGrid(GraphicsContext g, double cellHeight) {
         if (!(_transform instanceof GridTransform grid)) return;
         int start = grid.getEffectiveStartMinutes();
@@ -338,29 +440,6 @@ public class NightRenderer {
         }
     }
 
-    private static Color colorOf(SleepSpan span) {
-        int m = span.toMinutes();
-        if (m < 15) {
-            double t = m / 15.0;
-            return Color.rgb(
-                    (int) (240 - t * 40),
-                    (int) (100 + t * 70),
-                    (int) (60 + t * 50));
-        } else if (m <= 45) {
-            double t = (m - 15) / 30.0;
-            return Color.rgb(
-                    (int) (120 - t * 50),
-                    (int) (190 - t * 40),
-                    (int) (235 - t * 15));
-        } else {
-            double t = Math.min((m - 45) / 60.0, 1.0);
-            return Color.rgb(
-                    (int) (60 + t * 20),
-                    (int) (80 - t * 20),
-                    (int) (190 - t * 20));
-        }
-    }
-
     private static Color easeColor(Ease ease) {
         return switch (ease) {
             case Hard -> COLOR_EASE_HARD;
@@ -379,15 +458,26 @@ public class NightRenderer {
         };
     }
 
-    private static double textWidth(String text, Font font) {
-        Text t = new Text(text);
-        t.setFont(font);
-        return t.getLayoutBounds().getWidth();
+    private double textWidth(String text, Font font) {
+        return measureOf(font).width(text);
     }
 
-    private static double textHeight(String text, Font font) {
-        Text t = new Text(text);
-        t.setFont(font);
-        return t.getLayoutBounds().getHeight();
+    // Labels are single-line, so the height depends on the font only
+    private double textHeight(Font font) {
+        return measureOf(font).height();
+    }
+
+    private TextMeasure measureOf(Font font) {
+        return _measures.computeIfAbsent(font, _measureFactory);
+    }
+
+    private record Layout(Transform transform, double resolution, int min, int start, int end, Locale locale) {
+        static Layout of(Transform transform) {
+            if (transform instanceof GridTransform grid) {
+                return new Layout(transform, transform._resolution, transform._min,
+                        grid.getEffectiveStartMinutes(), grid.getEffectiveEndMinutes(), Locale.getDefault());
+            }
+            return new Layout(transform, transform._resolution, transform._min, 0, 0, Locale.getDefault());
+        }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.render;
+
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Text widths and the line height of a font.
+ * <p>
+ * Labels of times and lengths consist of digits and a few unit characters,
+ * so their widths are summed from the advances of these characters.
+ * Other strings are measured once and remembered.
+ */
+class TextMeasure {
+    private static final String LABEL_CHARS = "0123456789:чм ";
+    private static final int MAX_CACHED = 1024;
+
+    private final Font _font;
+    private final double[] _advances = new double[LABEL_CHARS.length()];
+    private final double _height;
+    private final Map<String, Double> _widths = new HashMap<>();
+
+    TextMeasure(Font font) {
+        _font = font;
+        for (int i = 0; i < _advances.length; i++) {
+            _advances[i] = measure(LABEL_CHARS.substring(i, i + 1));
+        }
+        _height = textOf("0").getLayoutBounds().getHeight();
+    }
+
+    double width(String text) {
+        double sum = 0;
+        for (int i = 0; i < text.length(); i++) {
+            int index = LABEL_CHARS.indexOf(text.charAt(i));
+            if (index < 0) {
+                return cachedWidth(text);
+            }
+            sum += _advances[index];
+        }
+        return sum;
+    }
+
+    double height() {
+        return _height;
+    }
+
+    private double cachedWidth(String text) {
+        Double width = _widths.get(text);
+        if (width == null) {
+            if (_widths.size() >= MAX_CACHED) {
+                _widths.clear();
+            }
+            width = measure(text);
+            _widths.put(text, width);
+        }
+        return width;
+    }
+
+    private double measure(String text) {
+        return textOf(text).getLayoutBounds().getWidth();
+    }
+
+    private Text textOf(String text) {
+        Text t = new Text(text);
+        t.setFont(_font);
+        return t;
+    }
+}
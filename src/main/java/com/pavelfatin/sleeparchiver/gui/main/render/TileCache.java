@@ -0,0 +1,93 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.render;
+
+import com.pavelfatin.sleeparchiver.model.Night;
+import javafx.scene.image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used images of rendered nights, limited by the total number of pixels.
+ * Nights are matched by identity, as an edited night is a new instance.
+ */
+class TileCache {
+    private final Map<Key, Image> _tiles = new LinkedHashMap<>(64, 0.75f, true);
+    private final long _capacity;
+    private long _pixels;
+
+    TileCache(long capacity) {
+        _capacity = capacity;
+    }
+
+    Image get(Night night, int width, boolean selected, boolean focused, double scale) {
+        return _tiles.get(new Key(night, width, selected, focused, scale));
+    }
+
+    void put(Night night, int width, boolean selected, boolean focused, double scale, Image tile) {
+        Image previous = _tiles.put(new Key(night, width, selected, focused, scale), tile);
+        if (previous != null) {
+            _pixels -= pixelsOf(previous);
+        }
+        _pixels += pixelsOf(tile);
+
+        Iterator<Image> it = _tiles.values().iterator();
+        while (_pixels > _capacity && _tiles.size() > 1) {
+            _pixels -= pixelsOf(it.next());
+            it.remove();
+        }
+    }
+
+    void clear() {
+        _tiles.clear();
+        _pixels = 0;
+    }
+
+    int size() {
+        return _tiles.size();
+    }
+
+    private static long pixelsOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight();
+    }
+
+    private record Key(Night night, int width, boolean selected, boolean focused, double scale) {
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key other
+                    && night == other.night
+                    && width == other.width
+                    && selected == other.selected
+                    && focused == other.focused
+                    && scale == other.scale;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(night);
+            result = 31 * result + width;
+            result = 31 * result + Boolean.hashCode(selected);
+            result = 31 * result + Boolean.hashCode(focused);
+            result = 31 * result + Double.hashCode(scale);
+            return result;
+        }
+    }
+}
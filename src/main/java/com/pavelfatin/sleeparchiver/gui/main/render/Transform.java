@@ -22,12 +22,14 @@ import com.pavelfatin.sleeparchiver.model.Metrics;
 import com.pavelfatin.sleeparchiver.model.Night;
 import com.pavelfatin.sleeparchiver.model.SleepInstant;
 
+import java.util.Collection;
 import java.util.List;
 
-public abstract class Transform {
+public abstract class Transform implements Cloneable {
     protected double _resolution;
     protected int _min;
     protected int _first;
+    protected MinuteRange _range = new MinuteRange();
 
     private final String _name;
 
@@ -52,7 +54,19 @@ public abstract class Transform {
     }
 
     public void setNights(List<Night> nights) {
-        _min = minMinuteOf(nights);
+        _range.clear();
+        _range.addAll(nights);
+        rangeChanged();
+    }
+
+    public void updateNights(Collection<? extends Night> removed, Collection<? extends Night> added) {
+        _range.removeAll(removed);
+        _range.addAll(added);
+        rangeChanged();
+    }
+
+    protected void rangeChanged() {
+        _min = _range.isEmpty() ? 0 : _range.getMin();
     }
 
     public void setNight(Night night) {
@@ -71,17 +85,6 @@ public abstract class Transform {
         return max;
     }
 
-    private static int minMinuteOf(List<Night> nights) {
-        int min = nights.isEmpty() ? 0 : Integer.MAX_VALUE;
-        for (Night night : nights) {
-            if (night.isComplete()) {
-                int edge = night.getMetrics().getFirstInstant().toMinutes();
-                min = Math.min(min, edge);
-            }
-        }
-        return min;
-    }
-
     protected static int maxWidthOf(List<Night> nights) {
         int max = 0;
         for (Night night : nights) {
@@ -93,6 +96,17 @@ public abstract class Transform {
         return max;
     }
 
+    // For computing positions off the FX thread, positions don't depend on the range
+    public Transform copy() {
+        try {
+            Transform transform = (Transform) clone();
+            transform._range = new MinuteRange();
+            return transform;
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     @Override
     public String toString() {
         return _name;
@@ -40,6 +40,8 @@ public class PreferencesDialog extends Dialog<Void> {
     private final CheckBox _historyEnabled;
     private final Spinner<Integer> _historyLimit;
     private final CheckBox _openRecent;
+    private final Spinner<Integer> _undoLimit;
+    private final Spinner<Integer> _undoMemory;
 
     private final CheckBox _debugLogging;
     private final CheckBox _manualGrid;
@@ -54,7 +56,7 @@ public class PreferencesDialog extends Dialog<Void> {
     private final RadioButton _sortDescRadio;
     private final RadioButton _sortAscRadio;
 
-    public PreferencesDialog(Stage owner, Preferences preferences) {
+    public PreferencesDialog(Stage owner, Preferences preferences, int undoSteps, long undoFootprint) {
         _preferences = preferences;
         initOwner(owner);
         setTitle(t("preferences.title"));
@@ -86,6 +88,14 @@ public class PreferencesDialog extends Dialog<Void> {
         _historyLimit.setDisable(!preferences.isHistoryEnabled());
         _openRecent.setDisable(!preferences.isHistoryEnabled());
 
+        _undoLimit = new Spinner<>(1, 10000, preferences.getUndoLimit());
+        _undoLimit.setEditable(true);
+        _undoLimit.setPrefWidth(90);
+
+        _undoMemory = new Spinner<>(1, 4096, preferences.getUndoMemory());
+        _undoMemory.setEditable(true);
+        _undoMemory.setPrefWidth(90);
+
         // Debug logging
         _debugLogging = new CheckBox(t("preferences.debugLogging"));
         _debugLogging.setSelected(preferences.isDebugLogging());
@@ -172,6 +182,21 @@ public class PreferencesDialog extends Dialog<Void> {
         history.getChildren().addAll(_historyEnabled, _openRecent, historyGrid);
         historyPane.setContent(history);
 
+        // Undo pane
+        TitledPane undoPane = new TitledPane();
+        undoPane.setText(t("preferences.undo"));
+        undoPane.setCollapsible(false);
+        GridPane undo = new GridPane();
+        undo.setHgap(10);
+        undo.setVgap(5);
+        undo.setPadding(new Insets(5));
+        undo.add(new Label(t("preferences.undoLimit")), 0, 0);
+        undo.add(_undoLimit, 1, 0);
+        undo.add(new Label(t("preferences.undoMemory")), 2, 0);
+        undo.add(_undoMemory, 3, 0);
+        undo.add(new Label(t("preferences.undoUsage", undoSteps, (undoFootprint + 1023) / 1024)), 0, 1, 4, 1);
+        undoPane.setContent(undo);
+
         // Grid pane
         TitledPane gridPane = new TitledPane();
         gridPane.setText(t("preferences.grid"));
@@ -195,7 +220,7 @@ public class PreferencesDialog extends Dialog<Void> {
                 new Label(t("preferences.sortOrder")), _sortDescRadio, _sortAscRadio);
         displayPane.setContent(displayBox);
 
-        content.getChildren().addAll(generalPane, historyPane, gridPane, displayPane);
+        content.getChildren().addAll(generalPane, historyPane, undoPane, gridPane, displayPane);
 
         getDialogPane().setContent(content);
         getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
@@ -215,6 +240,8 @@ public class PreferencesDialog extends Dialog<Void> {
         _preferences.setHistoryEnabled(_historyEnabled.isSelected());
         _preferences.setHistoryLimit(_historyLimit.getValue());
         _preferences.setOpenRecentEnabled(_openRecent.isSelected());
+        _preferences.setUndoLimit(_undoLimit.getValue());
+        _preferences.setUndoMemory(_undoMemory.getValue());
 
         _preferences.setDebugLogging(_debugLogging.isSelected());
         _preferences.setManualGrid(_manualGrid.isSelected());
@@ -0,0 +1,119 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.statistics;
+
+import com.pavelfatin.sleeparchiver.model.SummaryCache;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.stage.Stage;
+
+import java.time.LocalDate;
+
+import static com.pavelfatin.sleeparchiver.lang.I18n.t;
+
+public class StatisticsDialog extends Dialog<Void> {
+    private final SummaryCache _cache;
+    private final DatePicker _from;
+    private final DatePicker _to;
+
+    private final Label _nights = new Label();
+    private final Label _complete = new Label();
+    private final Label _meanDuration = new Label();
+    private final Label _medianDuration = new Label();
+    private final Label _breaks = new Label();
+    private final Label _deepSleep = new Label();
+    private final Label _alarm = new Label();
+
+    /**
+     * @param to inclusive
+     */
+    public StatisticsDialog(Stage owner, SummaryCache cache, LocalDate from, LocalDate to) {
+        _cache = cache;
+        initOwner(owner);
+        setTitle(t("statistics.title"));
+        setResizable(false);
+
+        _from = new DatePicker(from);
+        _to = new DatePicker(to);
+        _from.valueProperty().addListener((obs, oldV, newV) -> updateFigures());
+        _to.valueProperty().addListener((obs, oldV, newV) -> updateFigures());
+
+        HBox range = new HBox(10,
+                new Label(t("statistics.from")), _from,
+                new Label(t("statistics.to")), _to);
+
+        GridPane figures = new GridPane();
+        figures.setHgap(10);
+        figures.setVgap(5);
+        figures.setPadding(new Insets(5));
+        addRow(figures, 0, "statistics.nights", _nights);
+        addRow(figures, 1, "statistics.complete", _complete);
+        addRow(figures, 2, "statistics.meanDuration", _meanDuration);
+        addRow(figures, 3, "statistics.medianDuration", _medianDuration);
+        addRow(figures, 4, "statistics.breaks", _breaks);
+        addRow(figures, 5, "statistics.deepSleep", _deepSleep);
+        addRow(figures, 6, "statistics.alarm", _alarm);
+
+        VBox content = new VBox(10, range, new Separator(), figures);
+        content.setPadding(new Insets(10));
+
+        getDialogPane().setContent(content);
+        getDialogPane().getButtonTypes().add(ButtonType.OK);
+
+        setResultConverter(button -> null);
+
+        updateFigures();
+    }
+
+    private static void addRow(GridPane grid, int row, String key, Label value) {
+        grid.add(new Label(t(key)), 0, row);
+        grid.add(value, 1, row);
+    }
+
+    private void updateFigures() {
+        LocalDate from = _from.getValue();
+        LocalDate to = _to.getValue();
+        SummaryCache.Statistics statistics = from == null || to == null
+                ? _cache.statistics(LocalDate.MIN, LocalDate.MIN)
+                : _cache.statistics(from, to.plusDays(1));
+
+        _nights.setText(Integer.toString(statistics.nights()));
+        _complete.setText(Integer.toString(statistics.completeNights()));
+        _meanDuration.setText(formatDuration(statistics.meanDuration()));
+        _medianDuration.setText(formatDuration(statistics.medianDuration()));
+        _breaks.setText(format("%.1f", statistics.breaksPerNight()));
+        _deepSleep.setText(format("%.0f%%", 100 * statistics.deepSleepShare()));
+        _alarm.setText(format("%.0f%%", 100 * statistics.alarmSuccessRate()));
+    }
+
+    private static String formatDuration(double minutes) {
+        if (Double.isNaN(minutes)) {
+            return t("statistics.none");
+        }
+        long rounded = Math.round(minutes);
+        return t("statistics.duration", rounded / 60, rounded % 60);
+    }
+
+    private static String format(String pattern, double value) {
+        return Double.isNaN(value) ? t("statistics.none") : String.format(pattern, value);
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.*;
+
+/**
+ * Compact binary archive with a date index for random access.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ * header   magic:int, format:short, version:float, count:int
+ * nights   date:int (epoch day), alarm:short, toBed:short (minute of day, -1 if absent),
+ *          window:short, observations:byte, alarmWorked:byte, comments:int (string id, -1 if absent),
+ *          moments:short, moment:short..., conditions:short, condition:int (string id)...
+ * strings  count:int, offset:int... (relative to the string data), (length:int, UTF-8 bytes)...
+ * index    count:int, (date:int, offset:long)... sorted by date, nights without date last
+ * trailer  strings:long, index:long, magic:int
+ * </pre>
+ * Nights keep their document order, so conversion to and from the XML format is lossless.
+ * <p>
+ * Only the header is decoded up front: nights, strings and index entries are read from the
+ * underlying buffer on demand, so a mapped archive doesn't occupy heap in proportion to its size.
+ */
+public class BinaryArchive {
+    public static final String EXTENSION = "sab";
+
+    private static final int MAGIC = 0x534C5042;
+    private static final short FORMAT = 1;
+    private static final int HEADER_SIZE = 14;
+    private static final int TRAILER_SIZE = 20;
+    private static final int NO_DATE_KEY = Integer.MAX_VALUE;
+
+    private final ByteBuffer _buffer;
+    private final float _version;
+    private final int _count;
+    private final int _stringsOffset;
+    private final int _stringsDataOffset;
+    private final int _indexOffset;
+
+
+    private BinaryArchive(ByteBuffer buffer) throws IOException {
+        _buffer = buffer;
+
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE + TRAILER_SIZE
+                || buffer.getInt(0) != MAGIC || buffer.getInt(limit - 4) != MAGIC) {
+            throw new IOException("Not a binary archive");
+        }
+        if (buffer.getShort(4) != FORMAT) {
+            throw new IOException("Unsupported archive format: " + buffer.getShort(4));
+        }
+        _version = buffer.getFloat(6);
+        _count = buffer.getInt(10);
+
+        _stringsOffset = (int) buffer.getLong(limit - TRAILER_SIZE);
+        _stringsDataOffset = _stringsOffset + 4 + 4 * buffer.getInt(_stringsOffset);
+        _indexOffset = (int) buffer.getLong(limit - TRAILER_SIZE + 8);
+
+        if (buffer.getInt(_indexOffset) != _count) {
+            throw new IOException("Archive index is inconsistent");
+        }
+    }
+
+    /**
+     * Reads the whole archive into memory.
+     */
+    public static BinaryArchive load(File file) throws IOException {
+        return new BinaryArchive(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+    }
+
+    /**
+     * Maps the archive into memory, so that nights are read from the file on demand.
+     */
+    public static BinaryArchive open(File file) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new BinaryArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static boolean isArchive(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    public static boolean isArchiveName(File file) {
+        return file.getName().toLowerCase(Locale.ROOT).endsWith("." + EXTENSION);
+    }
+
+    public float getVersion() {
+        return _version;
+    }
+
+    public int size() {
+        return _count;
+    }
+
+    /**
+     * @return all nights, in document order
+     */
+    public List<Night> readAll() {
+        List<Night> nights = new ArrayList<>(_count);
+        ByteBuffer buffer = _buffer.duplicate().position(HEADER_SIZE);
+        for (int i = 0; i < _count; i++) {
+            nights.add(decode(buffer));
+        }
+        return nights;
+    }
+
+    /**
+     * @return the night at the given position in date order (nights without date come last)
+     */
+    public Night get(int index) {
+        Objects.checkIndex(index, _count);
+        return decode(_buffer.duplicate().position((int) offsetAt(index)));
+    }
+
+    /**
+     * @return the position in date order of the first night dated on or after the date
+     */
+    public int indexOf(LocalDate date) {
+        int key = (int) date.toEpochDay();
+        int low = 0;
+        int high = _count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (dateAt(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return nights of the month, sorted by date
+     */
+    public List<Night> read(YearMonth month) {
+        return read(month.atDay(1), month.plusMonths(1).atDay(1));
+    }
+
+    /**
+     * @return nights dated from (inclusive) to (exclusive), sorted by date
+     */
+    public List<Night> read(LocalDate from, LocalDate to) {
+        int begin = indexOf(from);
+        int end = indexOf(to);
+        List<Night> nights = new ArrayList<>(end - begin);
+        for (int i = begin; i < end; i++) {
+            nights.add(get(i));
+        }
+        return nights;
+    }
+
+    private int dateAt(int index) {
+        return _buffer.getInt(_indexOffset + 4 + 12 * index);
+    }
+
+    private long offsetAt(int index) {
+        return _buffer.getLong(_indexOffset + 4 + 12 * index + 4);
+    }
+
+    private Night decode(ByteBuffer buffer) {
+        LocalDate date = NightCodec.toDate(buffer.getInt());
+        LocalTime alarm = NightCodec.toTime(buffer.getShort());
+        LocalTime toBed = NightCodec.toTime(buffer.getShort());
+        int window = buffer.getShort();
+        int observations = buffer.get();
+        Boolean alarmWorked = NightCodec.toBoolean(buffer.get());
+        String comments = stringOf(buffer.getInt());
+
+        int momentsCount = buffer.getShort();
+        List<LocalTime> moments = new ArrayList<>(momentsCount);
+        for (int i = 0; i < momentsCount; i++) {
+            moments.add(NightCodec.toTime(buffer.getShort()));
+        }
+
+        int conditionsCount = buffer.getShort();
+        List<String> conditions = new ArrayList<>(conditionsCount);
+        for (int i = 0; i < conditionsCount; i++) {
+            conditions.add(stringOf(buffer.getInt()));
+        }
+
+        return Night.restore(date, alarm, window, toBed,
+                Ease.values()[observations & 0x03],
+                Quality.values()[(observations >> 2) & 0x03],
+                Ease.values()[(observations >> 4) & 0x03],
+                alarmWorked, comments, moments, conditions);
+    }
+
+    private String stringOf(int id) {
+        if (id < 0) {
+            return null;
+        }
+        int offset = _stringsDataOffset + _buffer.getInt(_stringsOffset + 4 + 4 * id);
+        byte[] bytes = new byte[_buffer.getInt(offset)];
+        _buffer.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void write(File file, float version, List<Night> nights) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            write(out, version, nights);
+        }
+    }
+
+    static void write(DataOutputStream out, float version, List<Night> nights) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        long[] offsets = new long[nights.size()];
+
+        out.writeInt(MAGIC);
+        out.writeShort(FORMAT);
+        out.writeFloat(version);
+        out.writeInt(nights.size());
+
+        long offset = HEADER_SIZE;
+        for (int i = 0; i < nights.size(); i++) {
+            Night night = nights.get(i);
+            offsets[i] = offset;
+
+            out.writeInt(NightCodec.fromDate(night.getDate()));
+            out.writeShort(NightCodec.fromTime(night.getAlarm()));
+            out.writeShort(NightCodec.fromTime(night.getToBed()));
+            out.writeShort(night.getWindow());
+            out.writeByte(night.getEaseOfFallingAsleep().ordinal()
+                    | night.getQualityOfSleep().ordinal() << 2
+                    | night.getEaseOfWakingUp().ordinal() << 4);
+            out.writeByte(NightCodec.fromBoolean(night.getRawAlarmWorked()));
+            out.writeInt(idOf(night.getRawComments(), ids, strings));
+
+            out.writeShort(night.getMomentsCount());
+            for (LocalTime moment : night.getMoments()) {
+                out.writeShort(NightCodec.fromTime(moment));
+            }
+
+            out.writeShort(night.getConditionsCount());
+            for (String condition : night.getConditions()) {
+                out.writeInt(idOf(condition, ids, strings));
+            }
+
+            offset += 20 + 2 * night.getMomentsCount() + 4 * night.getConditionsCount();
+        }
+
+        long stringsOffset = offset;
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        out.writeInt(strings.size());
+        int relative = 0;
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            out.writeInt(relative);
+            relative += 4 + bytes.length;
+        }
+        for (byte[] bytes : encoded) {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        offset += 4 + 4L * strings.size() + relative;
+
+        Integer[] order = new Integer[nights.size()];
+        int[] keys = new int[nights.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            LocalDate date = nights.get(i).getDate();
+            keys[i] = date == null ? NO_DATE_KEY : (int) date.toEpochDay();
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> keys[i]));
+
+        long indexOffset = offset;
+        out.writeInt(order.length);
+        for (int i : order) {
+            out.writeInt(keys[i]);
+            out.writeLong(offsets[i]);
+        }
+
+        out.writeLong(stringsOffset);
+        out.writeLong(indexOffset);
+        out.writeInt(MAGIC);
+    }
+
+    private static int idOf(String s, Map<String, Integer> ids, List<String> strings) {
+        if (s == null) {
+            return -1;
+        }
+        return ids.computeIfAbsent(s, k -> {
+            strings.add(k);
+            return strings.size() - 1;
+        });
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide table of condition names, so that nights can refer to
+ * conditions by number and share a single copy of every name.
+ */
+final class Conditions {
+    private static final Map<String, Integer> IDS = new ConcurrentHashMap<>();
+
+    // Copied on every addition, names are few
+    private static volatile String[] _names = new String[0];
+
+    private Conditions() {
+    }
+
+    static int idOf(String name) {
+        Integer id = IDS.get(name);
+        return id == null ? add(name) : id;
+    }
+
+    /**
+     * @return the number of the name, or -1 when the name is not known, without adding it
+     */
+    static int find(String name) {
+        Integer id = IDS.get(name);
+        return id == null ? -1 : id;
+    }
+
+    static String nameOf(int id) {
+        return _names[id];
+    }
+
+    private static synchronized int add(String name) {
+        Integer existing = IDS.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        String[] names = Arrays.copyOf(_names, _names.length + 1);
+        int id = names.length - 1;
+        names[id] = name;
+        _names = names;
+        IDS.put(name, id);
+        return id;
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Single-pass reader of the export dialect: fields separated by {@code ;},
+ * optionally quoted with {@code "} (doubled inside quotes), line breaks in
+ * values escaped as {@code \r} and {@code \n}.
+ * <p>
+ * Lines and decoded fields are kept in reusable buffers, so nothing is
+ * allocated per line besides the values requested.
+ */
+class CsvReader implements Closeable {
+    private static final char DELIMITER = ';';
+    private static final char QUOTE = '"';
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    private final Reader _reader;
+    private final char[] _buffer = new char[8192];
+    private int _position;
+    private int _limit;
+    private boolean _skipLineFeed;
+
+    private char[] _line = new char[256];
+    private int _length;
+    private int _lineNumber;
+
+    private char[] _fields = new char[256];
+    private int[] _starts = new int[32];
+    private int[] _ends = new int[32];
+    private int _count;
+
+    CsvReader(Reader reader) {
+        _reader = reader;
+    }
+
+    /**
+     * Reads and splits the next line.
+     *
+     * @return false at the end of input
+     * @throws IllegalArgumentException if the line is malformed
+     */
+    boolean next() throws IOException {
+        if (!readLine()) {
+            return false;
+        }
+        _lineNumber++;
+        split();
+        return true;
+    }
+
+    /**
+     * @return the number of the current line, starting from 1
+     */
+    int getLineNumber() {
+        return _lineNumber;
+    }
+
+    /**
+     * @return whether the current line contains only whitespace or control characters
+     */
+    boolean isBlank() {
+        for (int i = 0; i < _length; i++) {
+            if (_line[i] > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return _count;
+    }
+
+    boolean isEmpty(int index) {
+        return _starts[index] == _ends[index];
+    }
+
+    String getString(int index) {
+        return new String(_fields, _starts[index], _ends[index] - _starts[index]);
+    }
+
+    int getInt(int index) {
+        int length = _ends[index] - _starts[index];
+        if (length > 0 && length < 10) {
+            int result = digits(_starts[index], length);
+            if (result >= 0) {
+                return result;
+            }
+        }
+        return Integer.parseInt(charSequence(index), 0, length, 10);
+    }
+
+    LocalDate getDate(int index) {
+        int start = _starts[index];
+        int length = _ends[index] - start;
+        if (length == 0) {
+            return null;
+        }
+        if (length == 10 && _fields[start + 4] == '-' && _fields[start + 7] == '-') {
+            int year = digits(start, 4);
+            int month = digits(start + 5, 2);
+            int day = digits(start + 8, 2);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31) {
+                // The formatter's smart resolution clamps the day to the end of the month
+                LocalDate first = LocalDate.of(year, month, 1);
+                return first.withDayOfMonth(Math.min(day, first.lengthOfMonth()));
+            }
+        }
+        return LocalDate.parse(charSequence(index), DATE_FORMAT);
+    }
+
+    LocalTime getTime(int index) {
+        int start = _starts[index];
+        int length = _ends[index] - start;
+        if (length == 0) {
+            return null;
+        }
+        if (length == 5 && _fields[start + 2] == ':') {
+            int hour = digits(start, 2);
+            int minute = digits(start + 3, 2);
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60) {
+                return LocalTime.of(hour, minute);
+            }
+        }
+        return LocalTime.parse(charSequence(index), TIME_FORMAT);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _reader.close();
+    }
+
+    // Returns -1 unless all the characters are digits
+    private int digits(int start, int length) {
+        int result = 0;
+        for (int i = start; i < start + length; i++) {
+            int digit = _fields[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private CharSequence charSequence(int index) {
+        return CharBuffer.wrap(_fields, _starts[index], _ends[index] - _starts[index]);
+    }
+
+    // Line terminators are the same as in BufferedReader.readLine
+    private boolean readLine() throws IOException {
+        _length = 0;
+        boolean any = false;
+        while (true) {
+            if (_position == _limit) {
+                _limit = _reader.read(_buffer, 0, _buffer.length);
+                _position = 0;
+                if (_limit <= 0) {
+                    _limit = 0;
+                    return any;
+                }
+            }
+            if (_skipLineFeed) {
+                _skipLineFeed = false;
+                if (_buffer[_position] == '\n') {
+                    _position++;
+                    continue;
+                }
+            }
+            any = true;
+            int start = _position;
+            while (_position < _limit) {
+                char c = _buffer[_position];
+                if (c == '\n' || c == '\r') {
+                    append(start, _position);
+                    _position++;
+                    _skipLineFeed = c == '\r';
+                    return true;
+                }
+                _position++;
+            }
+            append(start, _position);
+        }
+    }
+
+    private void append(int start, int end) {
+        int length = end - start;
+        if (_length + length > _line.length) {
+            _line = Arrays.copyOf(_line, Math.max(2 * _line.length, _length + length));
+        }
+        System.arraycopy(_buffer, start, _line, _length, length);
+        _length += length;
+    }
+
+    private void split() {
+        _count = 0;
+        if (_length == 0) {
+            return;
+        }
+        if (_fields.length < _length) {
+            _fields = new char[Math.max(2 * _fields.length, _length)];
+        }
+
+        int position = 0;
+        int out = 0;
+        while (true) {
+            int start = out;
+            if (position < _length && _line[position] == QUOTE) {
+                int quote = position;
+                position++;
+                while (true) {
+                    if (position == _length) {
+                        throw new IllegalArgumentException("Unterminated quoted field at position " + (quote + 1));
+                    }
+                    char c = _line[position++];
+                    if (c == QUOTE) {
+                        if (position < _length && _line[position] == QUOTE) {
+                            _fields[out++] = QUOTE;
+                            position++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        _fields[out++] = c;
+                    }
+                }
+                while (position < _length && _line[position] != DELIMITER) {
+                    if (!Character.isWhitespace(_line[position])) {
+                        throw new IllegalArgumentException(
+                                "Invalid character between quoted field and delimiter at position " + (position + 1));
+                    }
+                    position++;
+                }
+            } else {
+                while (position < _length && _line[position] != DELIMITER) {
+                    _fields[out++] = _line[position++];
+                }
+            }
+            out = unescape(start, out);
+            add(start, out);
+
+            if (position == _length) {
+                break;
+            }
+            position++;
+        }
+    }
+
+    // Decodes \r and \n in place, returns the new end of the field
+    private int unescape(int start, int end) {
+        int out = start;
+        for (int i = start; i < end; i++) {
+            char c = _fields[i];
+            if (c == '\\' && i + 1 < end) {
+                char next = _fields[i + 1];
+                if (next == 'r') {
+                    c = '\r';
+                    i++;
+                } else if (next == 'n') {
+                    c = '\n';
+                    i++;
+                }
+            }
+            _fields[out++] = c;
+        }
+        return out;
+    }
+
+    private void add(int start, int end) {
+        if (_count == _starts.length) {
+            _starts = Arrays.copyOf(_starts, 2 * _count);
+            _ends = Arrays.copyOf(_ends, 2 * _count);
+        }
+        _starts[_count] = start;
+        _ends[_count] = end;
+        _count++;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Writer of the export dialect, the counterpart of {@link CsvReader}.
+ * <p>
+ * Values are quoted the same way as by Commons CSV in the minimal quote mode,
+ * which produced the format originally; line breaks inside quoted values are
+ * written as {@code \r} and {@code \n}.
+ */
+class CsvWriter {
+    private static final char DELIMITER = ';';
+    private static final char QUOTE = '"';
+
+    private final Writer _writer;
+    private final String _lineSeparator;
+    private boolean _newRecord = true;
+
+    CsvWriter(Writer writer) {
+        this(writer, System.lineSeparator());
+    }
+
+    CsvWriter(Writer writer, String lineSeparator) {
+        _writer = writer;
+        _lineSeparator = lineSeparator;
+    }
+
+    void write(String value) throws IOException {
+        startValue();
+        if (isQuotingNeeded(value)) {
+            writeQuoted(value);
+        } else {
+            _writer.write(value);
+        }
+        _newRecord = false;
+    }
+
+    void writeDate(LocalDate date) throws IOException {
+        if (date == null || date.getYear() < 0 || date.getYear() > 9999) {
+            write(Document.formatDate(date));
+            return;
+        }
+        startValue();
+        writeDigits(date.getYear(), 4);
+        _writer.write('-');
+        writeDigits(date.getMonthValue(), 2);
+        _writer.write('-');
+        writeDigits(date.getDayOfMonth(), 2);
+        _newRecord = false;
+    }
+
+    void writeTime(LocalTime time) throws IOException {
+        if (time == null) {
+            write("");
+            return;
+        }
+        startValue();
+        writeDigits(time.getHour(), 2);
+        _writer.write(':');
+        writeDigits(time.getMinute(), 2);
+        _newRecord = false;
+    }
+
+    void writeInt(int value) throws IOException {
+        write(Integer.toString(value));
+    }
+
+    void endRecord() throws IOException {
+        _writer.write(_lineSeparator);
+        _newRecord = true;
+    }
+
+    private void startValue() throws IOException {
+        if (!_newRecord) {
+            _writer.write(DELIMITER);
+        }
+    }
+
+    private boolean isQuotingNeeded(String value) {
+        int length = value.length();
+        if (length == 0) {
+            // An empty record would otherwise be indistinguishable from an empty line
+            return _newRecord;
+        }
+        if (value.charAt(0) <= '#') {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == QUOTE || c == DELIMITER) {
+                return true;
+            }
+        }
+        return value.charAt(length - 1) <= ' ';
+    }
+
+    private void writeQuoted(String value) throws IOException {
+        _writer.write(QUOTE);
+        int start = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String replacement = switch (c) {
+                case QUOTE -> "\"\"";
+                case '\r' -> "\\r";
+                case '\n' -> "\\n";
+                default -> null;
+            };
+            if (replacement != null) {
+                _writer.write(value, start, i - start);
+                _writer.write(replacement);
+                start = i + 1;
+            }
+        }
+        _writer.write(value, start, length - start);
+        _writer.write(QUOTE);
+    }
+
+    private void writeDigits(int value, int width) throws IOException {
+        for (int divisor = width == 4 ? 1000 : 10; divisor > 0; divisor /= 10) {
+            _writer.write('0' + value / divisor % 10);
+        }
+    }
+}
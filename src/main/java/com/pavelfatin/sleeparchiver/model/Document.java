@@ -18,25 +18,23 @@
 
 package com.pavelfatin.sleeparchiver.model;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
 import jakarta.xml.bind.*;
 import jakarta.xml.bind.annotation.*;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import java.io.*;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -45,12 +43,13 @@ import java.util.zip.GZIPOutputStream;
 public class Document {
     private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
-    private static final CSVFormat CSV_FORMAT = CSVFormat.Builder.create()
-            .setDelimiter(';')
-            .setQuote('"')
-            .build();
 
-    private static Schema _schema;
+    private static final XmlBinding<Document> BINDING = new XmlBinding<>(Document.class,
+            new Class<?>[]{Document.class},
+            () -> loadSchema("document.xsd"),
+            Map.of(Marshaller.JAXB_FORMATTED_OUTPUT, true,
+                    Marshaller.JAXB_SCHEMA_LOCATION,
+                    "http://pavelfatin.com/sleeparchiver http://pavelfatin.com/files/sleeparchiver/document.xsd"));
 
     @XmlAttribute(name = "version")
     private float _version = 1.0F;
@@ -61,6 +60,12 @@ public class Document {
     @XmlTransient
     private File _location;
 
+    @XmlTransient
+    private Journal _journal;
+
+    @XmlTransient
+    private boolean _readOnly;
+
 
     public Document() {
     }
@@ -73,32 +78,66 @@ public class Document {
         return Collections.unmodifiableList(_nights);
     }
 
+    // A read-only document is not journaled, its nights are not read up front
     private void setLocation(File location) {
         _location = location;
+        _journal = new Journal(location, _readOnly ? Collections.emptyList() : _nights);
     }
 
     public static Document load(File file) throws IOException {
+        Document result = BinaryArchive.isArchive(file) ? loadBinary(file) : loadXml(file);
+        result.setLocation(file);
+        result._journal.replay(result);
+        return result;
+    }
+
+    /**
+     * Opens a binary archive as a read-only document whose nights (in date order) are
+     * decoded from the mapped file on access rather than loaded up front.
+     * Changes pending in the archive journal are not reflected.
+     */
+    public static Document open(File file) throws IOException {
+        BinaryArchive archive = BinaryArchive.open(file);
+        Document result = new Document();
+        result._nights = new MappedNights(archive);
+        result._version = archive.getVersion();
+        result._readOnly = true;
+        result.setLocation(file);
+        return result;
+    }
+
+    public boolean isReadOnly() {
+        return _readOnly;
+    }
+
+    private static Document loadXml(File file) throws IOException {
         try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
-            Document result = loadFrom(in);
-            result.setLocation(file);
-            return result;
-        } catch (JAXBException e) {
+            return readFrom(in);
+        } catch (XMLStreamException e) {
             throw new RuntimeException(e);
         }
     }
 
-    static Document loadFrom(InputStream stream) throws JAXBException {
-        Unmarshaller unmarshaller = createContext().createUnmarshaller();
-        unmarshaller.setEventHandler(new ValidationHandler());
-        unmarshaller.setSchema(getSchema());
-        return (Document) unmarshaller.unmarshal(stream);
+    private static Document loadBinary(File file) throws IOException {
+        BinaryArchive archive = BinaryArchive.load(file);
+        Document result = new Document(archive.readAll());
+        result._version = archive.getVersion();
+        return result;
     }
 
-    private static Schema getSchema() {
-        if (_schema == null) {
-            _schema = loadSchema("document.xsd");
+    static Document readFrom(InputStream stream) throws XMLStreamException {
+        try (NightXmlReader reader = new NightXmlReader(stream)) {
+            Document document = new Document();
+            document._version = reader.getVersion();
+            for (Night night = reader.read(); night != null; night = reader.read()) {
+                document._nights.add(night);
+            }
+            return document;
         }
-        return _schema;
+    }
+
+    static Document loadFrom(InputStream stream) throws JAXBException {
+        return BINDING.unmarshal(stream);
     }
 
     private static Schema loadSchema(String file) {
@@ -119,36 +158,136 @@ public class Document {
     }
 
     public void saveAs(File file, boolean backup) throws IOException {
-        byte[] bytes = saveToBytes();
+        File temp = new File(file.getPath() + ".tmp");
+
+        try {
+            if (BinaryArchive.isArchiveName(file)) {
+                BinaryArchive.write(temp, _version, _nights);
+            } else {
+                try (OutputStream out = new BufferedOutputStream(compress(new BufferedOutputStream(new FileOutputStream(temp))))) {
+                    writeTo(out);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            temp.delete();
+            throw e;
+        }
 
         if (backup && file.exists()) {
             createBackup(file);
         }
 
-        try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
-            out.write(bytes);
-            out.flush();
-            setLocation(file);
-        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        setLocation(file);
+        _journal.delete();
     }
 
-    private byte[] saveToBytes() {
-        try (ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-            saveTo(buffer);
-            return buffer.toByteArray();
-        } catch (JAXBException | IOException e) {
-            throw new RuntimeException(e);
+    void writeTo(OutputStream stream) throws IOException {
+        try (NightXmlWriter writer = new NightXmlWriter(stream, _version)) {
+            for (Night night : _nights) {
+                writer.write(night);
+            }
         }
     }
 
     void saveTo(OutputStream stream) throws JAXBException {
-        Marshaller marshaller = createContext().createMarshaller();
-        marshaller.setEventHandler(new ValidationHandler());
-        marshaller.setSchema(getSchema());
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        marshaller.setProperty(Marshaller.JAXB_SCHEMA_LOCATION,
-                "http://pavelfatin.com/sleeparchiver http://pavelfatin.com/files/sleeparchiver/document.xsd");
-        marshaller.marshal(this, stream);
+        BINDING.marshal(this, stream);
+    }
+
+    /**
+     * Applies the changes and records them in the archive journal,
+     * so that the cost depends on the size of the edit rather than on the archive size.
+     */
+    public void update(List<Night> removed, List<Night> added) throws IOException {
+        if (isNew()) {
+            throw new IllegalStateException("Document has no location");
+        }
+        if (_readOnly) {
+            throw new IllegalStateException("Document is read-only");
+        }
+
+        // Nights both removed and added (e.g. unaffected by a replacement) cancel each other out
+        Map<Night, Integer> pending = new HashMap<>();
+        for (Night night : removed) {
+            pending.merge(night, 1, Integer::sum);
+        }
+        List<Night> actuallyAdded = new ArrayList<>();
+        for (Night night : added) {
+            Integer count = pending.get(night);
+            if (count != null && count > 0) {
+                pending.put(night, count - 1);
+            } else {
+                actuallyAdded.add(night);
+            }
+        }
+        List<Night> actuallyRemoved = new ArrayList<>();
+        for (Night night : removed) {
+            int count = pending.get(night);
+            if (count > 0) {
+                pending.put(night, count - 1);
+                actuallyRemoved.add(night);
+            }
+        }
+
+        if (!actuallyRemoved.isEmpty() || !actuallyAdded.isEmpty()) {
+            apply(actuallyRemoved, actuallyAdded);
+            _journal.append(actuallyRemoved, actuallyAdded);
+        }
+    }
+
+    void apply(List<Night> removed, List<Night> added) {
+        Comparator<Night> comparator = Night.getComparator();
+        for (Night night : removed) {
+            int index = indexOf(night);
+            if (index >= 0) {
+                _nights.remove(index);
+            }
+        }
+        for (Night night : added) {
+            int low = 0;
+            int high = _nights.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (comparator.compare(_nights.get(middle), night) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            _nights.add(low, night);
+        }
+    }
+
+    private int indexOf(Night night) {
+        int index = Collections.binarySearch(_nights, night, Night.getComparator());
+        if (index >= 0) {
+            for (int i = index; i >= 0 && Night.getComparator().compare(_nights.get(i), night) == 0; i--) {
+                if (_nights.get(i).equals(night)) {
+                    return i;
+                }
+            }
+            for (int i = index + 1; i < _nights.size() && Night.getComparator().compare(_nights.get(i), night) == 0; i++) {
+                if (_nights.get(i).equals(night)) {
+                    return i;
+                }
+            }
+        }
+        // Archives written by older versions are not necessarily sorted
+        return _nights.indexOf(night);
+    }
+
+    /**
+     * @return the number of night changes recorded in the journal since the archive was last written in full
+     */
+    public int getJournalSize() {
+        return _journal == null ? 0 : _journal.size();
+    }
+
+    // Block-parallel deflating is only a gain with spare cores to run it
+    private static OutputStream compress(OutputStream out) throws IOException {
+        return Runtime.getRuntime().availableProcessors() > 1
+                ? new ParallelGzipOutputStream(out)
+                : new GZIPOutputStream(out);
     }
 
     private void createBackup(File file) throws IOException {
@@ -165,67 +304,76 @@ public class Document {
         }
     }
 
-    private static JAXBContext createContext() throws JAXBException {
-        return JAXBContext.newInstance(Document.class, Night.class);
-    }
-
     public static List<Night> importData(File file) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+        if (ParallelImport.isApplicable(file)) {
+            return ParallelImport.read(file, Charset.defaultCharset());
+        }
+        try (Reader reader = new FileReader(file)) {
             return importDataFrom(reader);
         }
     }
 
-    static List<Night> importDataFrom(BufferedReader reader) throws IOException {
+    /**
+     * @throws ImportException if a line is malformed
+     */
+    static List<Night> importDataFrom(Reader in) throws IOException {
         List<Night> nights = new ArrayList<>();
+        readData(in, nights);
+        nights.sort(Night.getComparator());
+        return nights;
+    }
 
-        while (reader.ready()) {
-            String line = reader.readLine();
-
-            if (line == null) {
-                break;
-            }
-
-            if (line.trim().isEmpty()) {
+    /**
+     * Appends nights in the order of lines.
+     *
+     * @return the number of lines read
+     * @throws ImportException if a line is malformed
+     */
+    static int readData(Reader in, List<Night> nights) throws IOException {
+        CsvReader reader = new CsvReader(in);
+        while (reader.next()) {
+            if (reader.isBlank()) {
                 continue;
             }
-
-            nights.add(parse(line));
+            try {
+                nights.add(parse(reader));
+            } catch (RuntimeException e) {
+                throw new ImportException(reader.getLineNumber(), e);
+            }
         }
-
-        nights.sort(Night.getComparator());
-
-        return nights;
+        return reader.getLineNumber();
     }
 
-    private static Night parse(String line) {
-        List<String> columns = split(line);
+    private static Night parse(CsvReader reader) {
+        if (reader.size() < 9) {
+            throw new IllegalArgumentException("Expected at least 9 columns, found " + reader.size());
+        }
 
         List<LocalTime> moments = new ArrayList<>();
         List<String> conditions = new ArrayList<>();
 
         boolean momentsColumns = true;
-        for (int i = 9; i < columns.size(); i++) {
-            String column = columns.get(i);
-            if (column.isEmpty()) {
+        for (int i = 9; i < reader.size(); i++) {
+            if (reader.isEmpty(i)) {
                 momentsColumns = false;
                 continue;
             }
             if (momentsColumns) {
-                moments.add(parseTime(column));
+                moments.add(reader.getTime(i));
             } else {
-                conditions.add(column);
+                conditions.add(reader.getString(i));
             }
         }
 
-        return new Night(parseDate(columns.get(0)),
-                parseTime(columns.get(1)),
-                Integer.parseInt(columns.get(2)),
-                parseTime(columns.get(3)),
-                Ease.parse(columns.get(4)),
-                Quality.parse(columns.get(5)),
-                Ease.parse(columns.get(6)),
-                "true".equalsIgnoreCase(columns.get(7)),
-                columns.get(8),
+        return new Night(reader.getDate(0),
+                reader.getTime(1),
+                reader.getInt(2),
+                reader.getTime(3),
+                Ease.parse(reader.getString(4)),
+                Quality.parse(reader.getString(5)),
+                Ease.parse(reader.getString(6)),
+                "true".equalsIgnoreCase(reader.getString(7)),
+                reader.getString(8),
                 moments, conditions);
     }
 
@@ -236,32 +384,35 @@ public class Document {
         }
     }
 
-    static void exportDataTo(BufferedWriter writer, List<Night> nights) throws IOException {
+    static void exportDataTo(Writer writer, List<Night> nights) throws IOException {
+        // Conditions are aligned to the same column, which needs the widest row up front
         int maxMomentsCount = getMaxMomentsCount(nights);
+        CsvWriter csv = new CsvWriter(writer);
         for (Night night : nights) {
-            List<String> columns = new ArrayList<>();
-            columns.add(formatDate(night.getDate()));
-            columns.add(formatTime(night.getAlarm()));
-            columns.add(Integer.toString(night.getWindow()));
-            columns.add(formatTime(night.getToBed()));
-
-            columns.add(night.getEaseOfFallingAsleep().format());
-            columns.add(night.getQualityOfSleep().format());
-            columns.add(night.getEaseOfWakingUp().format());
-            columns.add(night.isAlarmWorked() ? "true" : "false");
-            columns.add(night.getComments());
+            csv.writeDate(night.getDate());
+            csv.writeTime(night.getAlarm());
+            csv.writeInt(night.getWindow());
+            csv.writeTime(night.getToBed());
+
+            csv.write(night.getEaseOfFallingAsleep().format());
+            csv.write(night.getQualityOfSleep().format());
+            csv.write(night.getEaseOfWakingUp().format());
+            csv.write(night.isAlarmWorked() ? "true" : "false");
+            csv.write(night.getComments());
 
             for (LocalTime moment : night.getMoments()) {
-                columns.add(formatTime(moment));
+                csv.writeTime(moment);
             }
             if (night.hasConditions()) {
                 int levelers = maxMomentsCount - night.getMomentsCount();
-                columns.addAll(Collections.nCopies(levelers + 1, ""));
-                columns.addAll(night.getConditions());
+                for (int i = 0; i <= levelers; i++) {
+                    csv.write("");
+                }
+                for (String condition : night.getConditions()) {
+                    csv.write(condition);
+                }
             }
-            String csvLine = join(columns);
-            writer.write(csvLine);
-            writer.newLine();
+            csv.endRecord();
         }
     }
 
@@ -306,30 +457,28 @@ public class Document {
     static String join(List<String> columns) {
         try {
             StringWriter buffer = new StringWriter();
-            try (CSVPrinter printer = new CSVPrinter(buffer, CSV_FORMAT)) {
-                printer.printRecord(columns);
+            CsvWriter writer = new CsvWriter(buffer);
+            for (String column : columns) {
+                writer.write(column);
             }
-            return buffer.toString().trim().replaceAll("\r", "\\\\r").replaceAll("\n", "\\\\n");
+            return buffer.toString();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     static List<String> split(String line) {
-        if (line.isEmpty()) {
-            return new ArrayList<>();
-        }
+        List<String> columns = new ArrayList<>();
         try {
-            List<String> columns = new ArrayList<>();
-            try (CSVParser parser = CSVParser.parse(line, CSV_FORMAT)) {
-                CSVRecord record = parser.iterator().next();
-                for (String token : record) {
-                    columns.add(token.replaceAll("\\\\r", "\r").replaceAll("\\\\n", "\n"));
+            CsvReader reader = new CsvReader(new StringReader(line));
+            if (reader.next()) {
+                for (int i = 0; i < reader.size(); i++) {
+                    columns.add(reader.getString(i));
                 }
             }
-            return columns;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return columns;
     }
 }
@@ -0,0 +1,451 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Undo history of an archive kept in a sidecar file, so that it outlives the session.
+ * <p>
+ * Each step is stored as a delta of removed and added nights. Only the step headers are read
+ * when the history is opened, the nights of a step are read when the step is undone or redone.
+ * The header holds the current position and a fingerprint of the archive at that position;
+ * a history that doesn't match the archive (e.g. edited elsewhere) is started anew.
+ */
+public class History {
+    private static final int MAGIC = 0x53485354;
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 8;
+    // Checksum, count and the length of the name
+    private static final int MIN_STEP_LENGTH = 8 + 4 + 2;
+
+    private final File _file;
+    private final int _limit;
+    // Runs the file writes in order, or null to write in place
+    private final ExecutorService _writer;
+    private Future<?> _lastWrite;
+    private volatile IOException _writeError;
+
+    private int _size;
+    private int _position;
+    private long[] _offsets = new long[16];
+    private String[] _names = new String[16];
+    private long[] _checksums = new long[16];
+    private int[] _counts = new int[16];
+    private long _end = HEADER_LENGTH;
+
+    private int _count;
+    private long _checksum;
+
+    private History(File file, int limit, ExecutorService writer) {
+        _file = file;
+        _limit = limit;
+        _writer = writer;
+    }
+
+    public static File fileOf(File archive) {
+        return new File(archive.getPath() + ".history");
+    }
+
+    /**
+     * Opens the history of the archive, or starts a new one when there is no matching history.
+     *
+     * @param limit the number of steps to keep
+     */
+    public static History open(File archive, List<Night> nights, int limit) throws IOException {
+        return open(archive, nights, limit, null);
+    }
+
+    /**
+     * Opens the history, with the writes of the steps and positions made on the writer's thread.
+     * The state is updated at once, while a failed write is reported by a subsequent call.
+     */
+    public static History open(File archive, List<Night> nights, int limit, ExecutorService writer)
+            throws IOException {
+        History history = new History(fileOf(archive), limit, writer);
+        history._count = nights.size();
+        history._checksum = NightCodec.checksumOf(nights);
+        if (!history.read()) {
+            history.clear();
+        }
+        return history;
+    }
+
+    /**
+     * Copies the history to another archive with the same nights.
+     */
+    public History copyTo(File archive) throws IOException {
+        sync();
+        History history = new History(fileOf(archive), _limit, _writer);
+        if (_file.exists()) {
+            Files.copy(_file.toPath(), history._file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(history._file.toPath());
+        }
+        history._count = _count;
+        history._checksum = _checksum;
+        if (!history.read()) {
+            history.clear();
+        }
+        return history;
+    }
+
+    public File getFile() {
+        return _file;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public int getPosition() {
+        return _position;
+    }
+
+    public boolean isUndoAvailable() {
+        return _position > 0;
+    }
+
+    public int getRedoCount() {
+        return _size - _position;
+    }
+
+    public String getUndoName() {
+        return _names[_position - 1];
+    }
+
+    public String getRedoName() {
+        return _names[_position];
+    }
+
+    /**
+     * Records a step at the current position, dropping the steps that could be redone.
+     */
+    public void append(String name, List<Night> removed, List<Night> added) throws IOException {
+        checkWrites();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        long checksum = NightCodec.checksumOf(added) - NightCodec.checksumOf(removed);
+        int count = added.size() - removed.size();
+        out.writeLong(checksum);
+        out.writeInt(count);
+        out.writeUTF(name);
+        writeNights(out, removed);
+        writeNights(out, added);
+
+        long offset = _position < _size ? _offsets[_position] : _end;
+        byte[] bytes = buffer.toByteArray();
+        write(() -> {
+            try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+                file.setLength(offset);
+                file.seek(offset);
+                file.writeInt(bytes.length);
+                file.write(bytes);
+            }
+        });
+        _end = offset + 4 + bytes.length;
+
+        _size = _position;
+        add(offset, name, checksum, count);
+        _position = _size;
+        _checksum += checksum;
+        _count += count;
+        writeHeader();
+
+        if (_position > _limit + _limit / 4) {
+            compact();
+        }
+    }
+
+    /**
+     * Moves the position by a step that was undone or redone elsewhere.
+     *
+     * @return false when the step is not in the history, which is then started anew
+     */
+    public boolean move(int steps, List<Night> nights) throws IOException {
+        checkWrites();
+        int position = _position + steps;
+        if (position < 0 || position > _size) {
+            _count = nights.size();
+            _checksum = NightCodec.checksumOf(nights);
+            clear();
+            return false;
+        }
+        moveTo(position);
+        return true;
+    }
+
+    /**
+     * Reads the last done step and moves before it.
+     */
+    public Step undo() throws IOException {
+        sync();
+        Step step = readStep(_position - 1);
+        moveTo(_position - 1);
+        return step;
+    }
+
+    /**
+     * Reads the next step and moves after it.
+     */
+    public Step redo() throws IOException {
+        sync();
+        Step step = readStep(_position);
+        moveTo(_position + 1);
+        return step;
+    }
+
+    public void delete() throws IOException {
+        try {
+            sync();
+        } finally {
+            Files.deleteIfExists(_file.toPath());
+        }
+    }
+
+    private void moveTo(int position) throws IOException {
+        for (; _position < position; _position++) {
+            _checksum += _checksums[_position];
+            _count += _counts[_position];
+        }
+        for (; _position > position; _position--) {
+            _checksum -= _checksums[_position - 1];
+            _count -= _counts[_position - 1];
+        }
+        writeHeader();
+    }
+
+    private Step readStep(int index) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(_file, "r")) {
+            file.seek(_offsets[index]);
+            byte[] bytes = new byte[file.readInt()];
+            file.readFully(bytes);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            in.readLong();
+            in.readInt();
+            String name = in.readUTF();
+            List<Night> removed = readNights(in);
+            List<Night> added = readNights(in);
+            return new Step(name, removed, added);
+        }
+    }
+
+    private boolean read() throws IOException {
+        if (!_file.exists()) {
+            return false;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+            if (file.length() < HEADER_LENGTH || file.readInt() != MAGIC) {
+                return false;
+            }
+            int position = file.readInt();
+            int count = file.readInt();
+            long checksum = file.readLong();
+            if (count != _count || checksum != _checksum) {
+                return false;
+            }
+
+            long offset = HEADER_LENGTH;
+            long length = file.length();
+            while (offset + 4 <= length) {
+                file.seek(offset);
+                int stepLength = file.readInt();
+                long next = offset + 4 + stepLength;
+                if (stepLength < MIN_STEP_LENGTH || next > length) {
+                    break;
+                }
+                long stepChecksum = file.readLong();
+                int stepCount = file.readInt();
+                String name = file.readUTF();
+                if (file.getFilePointer() > next) {
+                    break;
+                }
+                add(offset, name, stepChecksum, stepCount);
+                offset = next;
+            }
+            // a torn or corrupt trailing step
+            file.setLength(offset);
+            _end = offset;
+
+            if (position > _size) {
+                return false;
+            }
+            _position = position;
+            return true;
+        } catch (EOFException | UTFDataFormatException e) {
+            return false;
+        }
+    }
+
+    private void clear() throws IOException {
+        _size = 0;
+        _position = 0;
+        _end = HEADER_LENGTH;
+        int count = _count;
+        long checksum = _checksum;
+        write(() -> {
+            if (_file.exists()) {
+                try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+                    file.setLength(HEADER_LENGTH);
+                }
+                writeHeader(_file, 0, count, checksum);
+            }
+        });
+    }
+
+    // The oldest steps are dropped by rewriting the rest of the file
+    private void compact() throws IOException {
+        int dropped = _position - _limit;
+        long from = _offsets[dropped];
+        long shift = from - HEADER_LENGTH;
+
+        write(() -> {
+            File temporary = new File(_file.getPath() + ".tmp");
+            try (RandomAccessFile source = new RandomAccessFile(_file, "r");
+                 RandomAccessFile target = new RandomAccessFile(temporary, "rw")) {
+                target.setLength(0);
+                byte[] header = new byte[HEADER_LENGTH];
+                source.readFully(header);
+                target.write(header);
+                source.seek(from);
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = source.read(buffer)) > 0) {
+                    target.write(buffer, 0, n);
+                }
+            }
+            Files.move(temporary.toPath(), _file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        });
+
+        int remaining = _size - dropped;
+        for (int i = 0; i < remaining; i++) {
+            _offsets[i] = _offsets[i + dropped] - shift;
+            _names[i] = _names[i + dropped];
+            _checksums[i] = _checksums[i + dropped];
+            _counts[i] = _counts[i + dropped];
+        }
+        _size = remaining;
+        _position -= dropped;
+        _end -= shift;
+        writeHeader();
+    }
+
+    private void add(long offset, String name, long checksum, int count) {
+        if (_size == _offsets.length) {
+            int capacity = 2 * _size;
+            _offsets = Arrays.copyOf(_offsets, capacity);
+            _names = Arrays.copyOf(_names, capacity);
+            _checksums = Arrays.copyOf(_checksums, capacity);
+            _counts = Arrays.copyOf(_counts, capacity);
+        }
+        _offsets[_size] = offset;
+        _names[_size] = name;
+        _checksums[_size] = checksum;
+        _counts[_size] = count;
+        _size++;
+    }
+
+    private void writeHeader() throws IOException {
+        int position = _position;
+        int count = _count;
+        long checksum = _checksum;
+        write(() -> writeHeader(_file, position, count, checksum));
+    }
+
+    private static void writeHeader(File target, int position, int count, long checksum) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(target, "rw")) {
+            file.writeInt(MAGIC);
+            file.writeInt(position);
+            file.writeInt(count);
+            file.writeLong(checksum);
+        }
+    }
+
+    private interface FileWrite {
+        void run() throws IOException;
+    }
+
+    // Writes follow each other on the writer's thread, those after a failure are skipped
+    private void write(FileWrite write) throws IOException {
+        if (_writer == null) {
+            write.run();
+            return;
+        }
+        _lastWrite = _writer.submit(() -> {
+            if (_writeError == null) {
+                try {
+                    write.run();
+                } catch (IOException e) {
+                    _writeError = e;
+                } catch (RuntimeException e) {
+                    _writeError = new IOException(e.getMessage(), e);
+                }
+            }
+        });
+    }
+
+    private void checkWrites() throws IOException {
+        IOException error = _writeError;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Waits for the pending writes, before the file is read or copied
+    private void sync() throws IOException {
+        if (_lastWrite != null) {
+            try {
+                _lastWrite.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+            _lastWrite = null;
+        }
+        checkWrites();
+    }
+
+    private static void writeNights(DataOutput out, List<Night> nights) throws IOException {
+        out.writeInt(nights.size());
+        for (Night night : nights) {
+            NightCodec.write(out, night);
+        }
+    }
+
+    private static List<Night> readNights(DataInput in) throws IOException {
+        int count = in.readInt();
+        List<Night> nights = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            nights.add(NightCodec.read(in));
+        }
+        return nights;
+    }
+
+    public record Step(String name, List<Night> removed, List<Night> added) {
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only log of changes made to an archive since it was last written in full.
+ * <p>
+ * Each record is a group of removed and added nights followed by a commit mark, so that
+ * a group torn by a crash is discarded on replay. The header holds the number of nights and
+ * the checksum of the archive content the journal applies to, so that copying the archive
+ * doesn't detach the journal. A journal left behind by an interrupted compaction doesn't match
+ * and is set aside, renamed rather than deleted.
+ */
+class Journal {
+    private static final int MAGIC = 0x534A5232;
+
+    private static final byte REMOVED = '-';
+    private static final byte ADDED = '+';
+    private static final byte COMMIT = '=';
+
+    private final File _archive;
+    private final File _file;
+    private final int _count;
+    private final long _checksum;
+    private int _size;
+
+
+    /**
+     * @param nights the nights of the archive as written
+     */
+    Journal(File archive, List<Night> nights) {
+        _archive = archive;
+        _file = fileOf(archive);
+        _count = nights.size();
+        _checksum = NightCodec.checksumOf(nights);
+    }
+
+    static File fileOf(File archive) {
+        return new File(archive.getPath() + ".journal");
+    }
+
+    static File staleFileOf(File archive) {
+        return new File(fileOf(archive).getPath() + ".stale");
+    }
+
+    File getFile() {
+        return _file;
+    }
+
+    /**
+     * @return the number of journaled night changes
+     */
+    int size() {
+        return _size;
+    }
+
+    void append(List<Night> removed, List<Night> added) throws IOException {
+        boolean fresh = _file.length() == 0;
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(_file, true)))) {
+            if (fresh) {
+                out.writeInt(MAGIC);
+                out.writeInt(_count);
+                out.writeLong(_checksum);
+            }
+            for (Night night : removed) {
+                out.writeByte(REMOVED);
+                NightCodec.write(out, night);
+            }
+            for (Night night : added) {
+                out.writeByte(ADDED);
+                NightCodec.write(out, night);
+            }
+            out.writeByte(COMMIT);
+        }
+
+        _size += removed.size() + added.size();
+    }
+
+    void replay(Document document) throws IOException {
+        if (!_file.exists()) {
+            return;
+        }
+
+        byte[] bytes = Files.readAllBytes(_file.toPath());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        try {
+            if (in.readInt() != MAGIC
+                    || in.readInt() != _count
+                    || in.readLong() != _checksum) {
+                setAside();
+                return;
+            }
+        } catch (EOFException e) {
+            delete();
+            return;
+        }
+
+        int committed = bytes.length - in.available();
+        List<Night> removed = new ArrayList<>();
+        List<Night> added = new ArrayList<>();
+        try {
+            while (in.available() > 0) {
+                byte type = in.readByte();
+                switch (type) {
+                    case REMOVED -> removed.add(NightCodec.read(in));
+                    case ADDED -> added.add(NightCodec.read(in));
+                    case COMMIT -> {
+                        document.apply(removed, added);
+                        _size += removed.size() + added.size();
+                        removed.clear();
+                        added.clear();
+                        committed = bytes.length - in.available();
+                    }
+                    default -> throw new IOException("Unknown journal record: " + type);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // a torn trailing group, dropped below
+        }
+
+        if (committed < bytes.length) {
+            try (RandomAccessFile file = new RandomAccessFile(_file, "rw")) {
+                file.setLength(committed);
+            }
+        }
+    }
+
+    // Kept for recovery by hand, replacing the one set aside before
+    private void setAside() throws IOException {
+        Files.move(_file.toPath(), staleFileOf(_archive).toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(_file.toPath());
+        _size = 0;
+    }
+}
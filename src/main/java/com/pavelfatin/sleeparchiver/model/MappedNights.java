@@ -0,0 +1,72 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.lang.ref.SoftReference;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of archive nights in date order, decoded on access.
+ * <p>
+ * Recently used nights are kept in a bounded cache that the garbage collector
+ * may clear as a whole under memory pressure.
+ */
+class MappedNights extends AbstractList<Night> implements RandomAccess {
+    private static final int CACHE_SIZE = 4096;
+
+    private final BinaryArchive _archive;
+    private SoftReference<Map<Integer, Night>> _cache = new SoftReference<>(null);
+
+    MappedNights(BinaryArchive archive) {
+        _archive = archive;
+    }
+
+    @Override
+    public synchronized Night get(int index) {
+        Map<Integer, Night> cache = getCache();
+        Night night = cache.get(index);
+        if (night == null) {
+            night = _archive.get(index);
+            cache.put(index, night);
+        }
+        return night;
+    }
+
+    @Override
+    public int size() {
+        return _archive.size();
+    }
+
+    private Map<Integer, Night> getCache() {
+        Map<Integer, Night> cache = _cache.get();
+        if (cache == null) {
+            cache = new LinkedHashMap<>(16, 0.75F, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Night> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+            _cache = new SoftReference<>(cache);
+        }
+        return cache;
+    }
+}
@@ -18,20 +18,63 @@
 
 package com.pavelfatin.sleeparchiver.model;
 
-import java.time.LocalTime;
-import java.util.Collections;
+import java.util.AbstractList;
 import java.util.List;
 
+/**
+ * Sleep metrics of a complete night.
+ * <p>
+ * Instants are kept as minute offsets from the midnight before going to bed,
+ * and the scalar metrics are computed from them in a single pass.
+ * {@link SleepInstant} and {@link SleepSpan} objects are created only on request.
+ */
 public class Metrics {
-    private List<LocalTime> _moments;
-    private List<SleepInstant> _instants;
-    private List<SleepSpan> _spans;
+    private static final int MINUTES_IN_DAY = 24 * 60;
+    private static final int DAY_BOUNDARY = 16 * 60;
+    private static final int DEEP_SLEEP_MINUTES = 45;
+    private static final int WAKE_THRESHOLD_MINUTES = 15;
 
+    private final int[] _minutes;
+    private final int _deepSleep;
+    private final int _wakeUp;
 
     Metrics(Night night) {
-        _moments = night.getCompleteMoments();
-        _instants = SleepInstant.toInstants(_moments);
-        _spans = SleepSpan.toSpans(_instants);
+        this(night.getCompleteMinutes());
+    }
+
+    /**
+     * @param minutes minutes of the day, converted to offsets in place
+     */
+    Metrics(int[] minutes) {
+        _minutes = minutes;
+
+        int days = minutes[0] < DAY_BOUNDARY ? 1 : 0;
+        int previous = minutes[0];
+        minutes[0] += days * MINUTES_IN_DAY;
+
+        int deepSleep = 0;
+        // The effective wake-up is the end of the last "real" sleep span (>= threshold).
+        // If all trailing intervals are short (< threshold), it means the person was already awake,
+        // so we count sleep only up to the start of that short-interval series.
+        int wakeUp = -1;
+        for (int i = 1; i < minutes.length; i++) {
+            int minute = minutes[i];
+            if (minute < previous) {
+                days++;
+            }
+            previous = minute;
+            minutes[i] = minute + days * MINUTES_IN_DAY;
+
+            int span = minutes[i] - minutes[i - 1];
+            if (span > DEEP_SLEEP_MINUTES) {
+                deepSleep += span;
+            }
+            if (span >= WAKE_THRESHOLD_MINUTES) {
+                wakeUp = i;
+            }
+        }
+        _deepSleep = deepSleep;
+        _wakeUp = wakeUp < 0 ? minutes.length - 2 : wakeUp;
     }
 
     public Integer getAverage() {
@@ -39,52 +82,35 @@ public class Metrics {
     }
 
     public int getDeepSleepMinutes() {
-        return _spans.stream()
-                .mapToInt(SleepSpan::toMinutes)
-                .filter(m -> m > 45)
-                .sum();
+        return _deepSleep;
     }
 
     public int getBreaksCount() {
-        return _moments.size() - 2;
+        return _minutes.length - 2;
     }
 
     public SleepInstant getFirstInstant() {
-        return _instants.getFirst();
+        return new SleepInstant(_minutes[0]);
     }
 
     public SleepInstant getLastInstant() {
-        return _instants.getLast();
+        return new SleepInstant(_minutes[_minutes.length - 1]);
     }
 
     public int getSpansCount() {
-        return _spans.size();
+        return _minutes.length - 1;
     }
 
     public SleepSpan getFirstSpan() {
-        return _spans.getFirst();
+        return spanAt(0);
     }
 
     public SleepSpan getLastSpan() {
-        return _spans.getLast();
+        return spanAt(_minutes.length - 2);
     }
 
-    private static final int WAKE_THRESHOLD_MINUTES = 15;
-
     public int getDuration() {
-        return new SleepSpan(getFirstSpan().begin(), findEffectiveWakeUp()).toMinutes();
-    }
-
-    // Finds the effective wake-up time: the end of the last "real" sleep span (>= threshold).
-    // If all trailing intervals are short (< threshold), it means the person was already awake,
-    // so we count sleep only up to the start of that short-interval series.
-    private SleepInstant findEffectiveWakeUp() {
-        for (int i = _spans.size() - 1; i >= 0; i--) {
-            if (_spans.get(i).toMinutes() >= WAKE_THRESHOLD_MINUTES) {
-                return _spans.get(i).end();
-            }
-        }
-        return getLastSpan().begin();
+        return _minutes[_wakeUp] - _minutes[0];
     }
 
     public SleepSpan getTotalSpan() {
@@ -92,10 +118,34 @@ public class Metrics {
     }
 
     public List<SleepInstant> getInstants() {
-        return Collections.unmodifiableList(_instants);
+        return new AbstractList<>() {
+            @Override
+            public SleepInstant get(int index) {
+                return new SleepInstant(_minutes[index]);
+            }
+
+            @Override
+            public int size() {
+                return _minutes.length;
+            }
+        };
     }
 
     public List<SleepSpan> getSpans() {
-        return Collections.unmodifiableList(_spans);
+        return new AbstractList<>() {
+            @Override
+            public SleepSpan get(int index) {
+                return spanAt(index);
+            }
+
+            @Override
+            public int size() {
+                return getSpansCount();
+            }
+        };
+    }
+
+    private SleepSpan spanAt(int index) {
+        return new SleepSpan(new SleepInstant(_minutes[index]), new SleepInstant(_minutes[index + 1]));
     }
 }
@@ -22,94 +22,115 @@ import com.pavelfatin.sleeparchiver.model.xml.LocalDateAdapter;
 import com.pavelfatin.sleeparchiver.model.xml.LocalTimeAdapter;
 
 import jakarta.xml.bind.annotation.*;
+import jakarta.xml.bind.annotation.adapters.XmlAdapter;
 import jakarta.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.util.*;
 
-@XmlRootElement(name = "night")
-@XmlAccessorType(value = XmlAccessType.FIELD)
-public class Night {
+/**
+ * A night record, stored compactly: the date as an epoch day, times as
+ * minutes of the day, moments in a short array and conditions as ids in
+ * the shared {@link Conditions} table. Objects are created on access.
+ * <p>
+ * Times are kept to the minute, the precision of all the storage formats.
+ */
+@XmlJavaTypeAdapter(Night.Adapter.class)
+public final class Night {
     private static final Integer[] WINDOWS = new Integer[]{0, 10, 20, 30, 40, 50, 60, 70, 80, 90};
     private static final NightsComparator NIGHTS_COMPARATOR = new NightsComparator();
 
+    static final int NO_DATE = Integer.MIN_VALUE;
+    static final short NO_TIME = -1;
 
-    @XmlAttribute(name = "date")
-    @XmlJavaTypeAdapter(LocalDateAdapter.class)
-    private LocalDate _date;
-
-    @XmlAttribute(name = "alarm")
-    @XmlJavaTypeAdapter(LocalTimeAdapter.class)
-    private LocalTime _alarm;
-
-    @XmlAttribute(name = "window")
-    private int _window;
-
-    @XmlAttribute(name = "toBed")
-    @XmlJavaTypeAdapter(LocalTimeAdapter.class)
-    private LocalTime _toBed;
+    private static final LocalTime[] TIMES = new LocalTime[24 * 60];
+    private static final Ease[] EASES = Ease.values();
+    private static final Quality[] QUALITIES = Quality.values();
 
-    @XmlAttribute(name = "easeOfFallingAsleep")
-    private Ease _easeOfFallingAsleep = Ease.Unknown;
+    private static final short[] NO_MOMENTS = new short[0];
+    private static final int[] NO_CONDITIONS = new int[0];
 
-    @XmlAttribute(name = "qualityOfSleep")
-    private Quality _qualityOfSleep = Quality.Unknown;
-
-    @XmlAttribute(name = "easeOfWakingUp")
-    private Ease _easeOfWakingUp = Ease.Unknown;
-
-    @XmlAttribute(name = "alarmWorked")
-    private Boolean _alarmWorked;
+    static {
+        for (int i = 0; i < TIMES.length; i++) {
+            TIMES[i] = LocalTime.of(i / 60, i % 60);
+        }
+    }
 
-    @XmlAttribute(name = "comments")
+    private int _date = NO_DATE;
+    private int _window;
+    private short _alarm = NO_TIME;
+    private short _toBed = NO_TIME;
+    private byte _easeOfFallingAsleep;
+    private byte _qualityOfSleep;
+    private byte _easeOfWakingUp;
+    // 0 - not set, 1 - false, 2 - true
+    private byte _alarmWorked;
     private String _comments;
+    private short[] _moments = NO_MOMENTS;
+    private int[] _conditions = NO_CONDITIONS;
 
-    @XmlElement(name = "moment")
-    @XmlElementWrapper(name = "moments")
-    @XmlJavaTypeAdapter(LocalTimeAdapter.class)
-    private List<LocalTime> _moments = new ArrayList<>();
-
-    @XmlElement(name = "condition")
-    @XmlElementWrapper(name = "conditions")
-    private List<String> _conditions = new ArrayList<>();
-
-    @XmlTransient
     private Metrics _metrics;
+    // Computed on the first request, 0 - not yet
+    private int _hash;
 
 
     private Night() {
     }
 
     public Night(LocalDate date, LocalTime alarm, int window, LocalTime toBed, List<LocalTime> moments) {
-        _date = date;
-        _alarm = alarm;
+        _date = toEpochDay(date);
+        _alarm = toMinutes(alarm);
         _window = window;
-        _toBed = toBed;
-        _moments = new ArrayList<>(moments);
+        _toBed = toMinutes(toBed);
+        _moments = toMinutes(moments);
     }
 
     public Night(LocalDate date, LocalTime alarm, int window, LocalTime toBed,
                  Ease easeOfFallingAsleep, Quality qualityOfSleep, Ease easeOfWakingUp,
                  boolean alarmWorked, String comments,
                  List<LocalTime> moments, List<String> conditions) {
-        _date = date;
-        _alarm = alarm;
-        _window = window;
-        _toBed = toBed;
-        _easeOfFallingAsleep = easeOfFallingAsleep;
-        _qualityOfSleep = qualityOfSleep;
-        _easeOfWakingUp = easeOfWakingUp;
-        _alarmWorked = alarmWorked ? true : null;
+        this(date, alarm, window, toBed, moments);
+        _easeOfFallingAsleep = (byte) easeOfFallingAsleep.ordinal();
+        _qualityOfSleep = (byte) qualityOfSleep.ordinal();
+        _easeOfWakingUp = (byte) easeOfWakingUp.ordinal();
+        _alarmWorked = alarmWorked ? (byte) 2 : 0;
         _comments = comments.isEmpty() ? null : comments;
-        _moments = new ArrayList<>(moments);
-        _conditions = new ArrayList<>(conditions);
+        _conditions = toIds(conditions);
+    }
+
+    static Night restore(LocalDate date, LocalTime alarm, int window, LocalTime toBed,
+                         Ease easeOfFallingAsleep, Quality qualityOfSleep, Ease easeOfWakingUp,
+                         Boolean alarmWorked, String comments,
+                         List<LocalTime> moments, List<String> conditions) {
+        Night night = new Night(date, alarm, window, toBed, moments);
+        night._easeOfFallingAsleep = (byte) easeOfFallingAsleep.ordinal();
+        night._qualityOfSleep = (byte) qualityOfSleep.ordinal();
+        night._easeOfWakingUp = (byte) easeOfWakingUp.ordinal();
+        night._alarmWorked = alarmWorked == null ? 0 : alarmWorked ? (byte) 2 : 1;
+        night._comments = comments;
+        night._conditions = toIds(conditions);
+        return night;
     }
 
     public LocalDate getDate() {
+        return _date == NO_DATE ? null : LocalDate.ofEpochDay(_date);
+    }
+
+    /**
+     * @return the date as an epoch day, or {@link #NO_DATE}
+     */
+    int getEpochDay() {
         return _date;
     }
 
     public LocalTime getAlarm() {
+        return toTime(_alarm);
+    }
+
+    /**
+     * @return the alarm time as a minute of the day, or {@link #NO_TIME}
+     */
+    int getAlarmMinutes() {
         return _alarm;
     }
 
@@ -122,35 +143,60 @@ public class Night {
     }
 
     public LocalTime getToBed() {
+        return toTime(_toBed);
+    }
+
+    /**
+     * @return the time of going to bed as a minute of the day, or {@link #NO_TIME}
+     */
+    int getToBedMinutes() {
         return _toBed;
     }
 
     public Ease getEaseOfFallingAsleep() {
-        return _easeOfFallingAsleep;
+        return EASES[_easeOfFallingAsleep];
     }
 
     public Quality getQualityOfSleep() {
-        return _qualityOfSleep;
+        return QUALITIES[_qualityOfSleep];
     }
 
     public Ease getEaseOfWakingUp() {
-        return _easeOfWakingUp;
+        return EASES[_easeOfWakingUp];
     }
 
     public boolean isAlarmWorked() {
-        return _alarmWorked == null ? false : _alarmWorked;
+        return _alarmWorked == 2;
     }
 
     public String getComments() {
         return _comments == null ? "" : _comments;
     }
 
+    Boolean getRawAlarmWorked() {
+        return _alarmWorked == 0 ? null : _alarmWorked == 2;
+    }
+
+    String getRawComments() {
+        return _comments;
+    }
+
     public List<LocalTime> getMoments() {
-        return Collections.unmodifiableList(_moments);
+        return new AbstractList<>() {
+            @Override
+            public LocalTime get(int index) {
+                return TIMES[_moments[index]];
+            }
+
+            @Override
+            public int size() {
+                return _moments.length;
+            }
+        };
     }
 
     public int getMomentsCount() {
-        return _moments.size();
+        return _moments.length;
     }
 
     public boolean hasMoments() {
@@ -158,11 +204,28 @@ public class Night {
     }
 
     public List<String> getConditions() {
-        return Collections.unmodifiableList(_conditions);
+        return new AbstractList<>() {
+            @Override
+            public String get(int index) {
+                return Conditions.nameOf(_conditions[index]);
+            }
+
+            @Override
+            public int size() {
+                return _conditions.length;
+            }
+        };
+    }
+
+    /**
+     * @return the id of the condition in the {@link Conditions} table
+     */
+    int getConditionId(int index) {
+        return _conditions[index];
     }
 
     public int getConditionsCount() {
-        return _conditions.size();
+        return _conditions.length;
     }
 
     public boolean hasConditions() {
@@ -170,31 +233,38 @@ public class Night {
     }
 
     public Night with(List<String> conditions) {
-        return new Night(_date, _alarm, _window, _toBed,
-                _easeOfFallingAsleep, _qualityOfSleep, _easeOfWakingUp,
-                _alarmWorked != null && _alarmWorked, _comments != null ? _comments : "",
-                _moments, conditions);
+        Night night = copy();
+        night._alarmWorked = isAlarmWorked() ? (byte) 2 : 0;
+        night._comments = getComments().isEmpty() ? null : _comments;
+        night._conditions = toIds(conditions);
+        return night;
     }
 
     public boolean isComplete() {
-        return _alarm != null
-                && _toBed != null
+        return _alarm != NO_TIME
+                && _toBed != NO_TIME
                 && hasMoments();
     }
 
-    List<LocalTime> getCompleteMoments() {
-        List<LocalTime> moments = new ArrayList<>();
-        moments.add(_toBed);
-        for (LocalTime m : _moments) {
-            // Skip moments after alarm (both in morning range, i.e. before 16:00)
-            if (_alarm != null && _alarm.isBefore(LocalTime.of(16, 0))
-                    && m.isBefore(LocalTime.of(16, 0)) && m.isAfter(_alarm)) {
+    /**
+     * @return minutes of the day from going to bed to the alarm
+     */
+    int[] getCompleteMinutes() {
+        // Moments after alarm are skipped when both are in morning range, i.e. before 16:00
+        int morning = 16 * 60;
+        boolean morningAlarm = _alarm != NO_TIME && _alarm < morning;
+
+        int[] minutes = new int[_moments.length + 2];
+        int count = 0;
+        minutes[count++] = _toBed;
+        for (short m : _moments) {
+            if (morningAlarm && m < morning && m > _alarm) {
                 continue;
             }
-            moments.add(m);
+            minutes[count++] = m;
         }
-        moments.add(_alarm);
-        return moments;
+        minutes[count++] = _alarm;
+        return count == minutes.length ? minutes : Arrays.copyOf(minutes, count);
     }
 
     public Metrics getMetrics() {
@@ -215,43 +285,184 @@ public class Night {
         return NIGHTS_COMPARATOR;
     }
 
+    private Night copy() {
+        Night night = new Night();
+        night._date = _date;
+        night._window = _window;
+        night._alarm = _alarm;
+        night._toBed = _toBed;
+        night._easeOfFallingAsleep = _easeOfFallingAsleep;
+        night._qualityOfSleep = _qualityOfSleep;
+        night._easeOfWakingUp = _easeOfWakingUp;
+        night._alarmWorked = _alarmWorked;
+        night._comments = _comments;
+        night._moments = _moments;
+        night._conditions = _conditions;
+        return night;
+    }
+
+    private static int toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : Math.toIntExact(date.toEpochDay());
+    }
+
+    private static short toMinutes(LocalTime time) {
+        return time == null ? NO_TIME : (short) (time.getHour() * 60 + time.getMinute());
+    }
+
+    private static short[] toMinutes(List<LocalTime> times) {
+        if (times.isEmpty()) {
+            return NO_MOMENTS;
+        }
+        short[] result = new short[times.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = toMinutes(Objects.requireNonNull(times.get(i)));
+        }
+        return result;
+    }
+
+    private static LocalTime toTime(short minutes) {
+        return minutes == NO_TIME ? null : TIMES[minutes];
+    }
+
+    private static int[] toIds(List<String> conditions) {
+        if (conditions.isEmpty()) {
+            return NO_CONDITIONS;
+        }
+        int[] result = new int[conditions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = Conditions.idOf(conditions.get(i));
+        }
+        return result;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Night other = (Night) obj;
-        return _window == other._window
-                && Objects.equals(_date, other._date)
-                && Objects.equals(_alarm, other._alarm)
-                && Objects.equals(_toBed, other._toBed)
-                && Objects.equals(_easeOfFallingAsleep, other._easeOfFallingAsleep)
-                && Objects.equals(_qualityOfSleep, other._qualityOfSleep)
-                && Objects.equals(_easeOfWakingUp, other._easeOfWakingUp)
-                && Objects.equals(_alarmWorked, other._alarmWorked)
+        if (_hash != 0 && other._hash != 0 && _hash != other._hash) return false;
+        return _date == other._date
+                && _window == other._window
+                && _alarm == other._alarm
+                && _toBed == other._toBed
+                && _easeOfFallingAsleep == other._easeOfFallingAsleep
+                && _qualityOfSleep == other._qualityOfSleep
+                && _easeOfWakingUp == other._easeOfWakingUp
+                && _alarmWorked == other._alarmWorked
                 && Objects.equals(_comments, other._comments)
-                && Objects.equals(_moments, other._moments)
-                && Objects.equals(_conditions, other._conditions);
+                && Arrays.equals(_moments, other._moments)
+                && Arrays.equals(_conditions, other._conditions);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(_date, _alarm, _window, _toBed,
-                _easeOfFallingAsleep, _qualityOfSleep, _easeOfWakingUp,
-                _alarmWorked, _comments, _moments, _conditions);
+        int hash = _hash;
+        if (hash == 0) {
+            hash = computeHash();
+            _hash = hash;
+        }
+        return hash;
+    }
+
+    // Fields are only set during construction, so the hash never changes once computed
+    private int computeHash() {
+        int result = _date;
+        result = 31 * result + _window;
+        result = 31 * result + _alarm;
+        result = 31 * result + _toBed;
+        result = 31 * result + _easeOfFallingAsleep;
+        result = 31 * result + _qualityOfSleep;
+        result = 31 * result + _easeOfWakingUp;
+        result = 31 * result + _alarmWorked;
+        result = 31 * result + Objects.hashCode(_comments);
+        result = 31 * result + Arrays.hashCode(_moments);
+        result = 31 * result + Arrays.hashCode(_conditions);
+        return result;
     }
 
     @Override
     public String toString() {
-        return Objects.toString(_date) + ", " +
-                Objects.toString(_alarm) + ", " +
+        return Objects.toString(getDate()) + ", " +
+                Objects.toString(getAlarm()) + ", " +
                 _window + ", " +
-                Objects.toString(_toBed) + ", " +
-                _easeOfFallingAsleep + ", " +
-                _qualityOfSleep + ", " +
-                _easeOfWakingUp + ", " +
-                _alarmWorked + ", " +
+                Objects.toString(getToBed()) + ", " +
+                getEaseOfFallingAsleep() + ", " +
+                getQualityOfSleep() + ", " +
+                getEaseOfWakingUp() + ", " +
+                getRawAlarmWorked() + ", " +
                 _comments + ", " +
-                _moments + ", " +
-                _conditions;
+                getMoments() + ", " +
+                getConditions();
+    }
+
+
+    // The XML form keeps the layout of the former JAXB-bound fields
+    @XmlType(name = "night")
+    @XmlAccessorType(XmlAccessType.FIELD)
+    static class Element {
+        @XmlAttribute(name = "date")
+        @XmlJavaTypeAdapter(LocalDateAdapter.class)
+        private LocalDate _date;
+
+        @XmlAttribute(name = "alarm")
+        @XmlJavaTypeAdapter(LocalTimeAdapter.class)
+        private LocalTime _alarm;
+
+        @XmlAttribute(name = "window")
+        private int _window;
+
+        @XmlAttribute(name = "toBed")
+        @XmlJavaTypeAdapter(LocalTimeAdapter.class)
+        private LocalTime _toBed;
+
+        @XmlAttribute(name = "easeOfFallingAsleep")
+        private Ease _easeOfFallingAsleep = Ease.Unknown;
+
+        @XmlAttribute(name = "qualityOfSleep")
+        private Quality _qualityOfSleep = Quality.Unknown;
+
+        @XmlAttribute(name = "easeOfWakingUp")
+        private Ease _easeOfWakingUp = Ease.Unknown;
+
+        @XmlAttribute(name = "alarmWorked")
+        private Boolean _alarmWorked;
+
+        @XmlAttribute(name = "comments")
+        private String _comments;
+
+        @XmlElement(name = "moment")
+        @XmlElementWrapper(name = "moments")
+        @XmlJavaTypeAdapter(LocalTimeAdapter.class)
+        private List<LocalTime> _moments = new ArrayList<>();
+
+        @XmlElement(name = "condition")
+        @XmlElementWrapper(name = "conditions")
+        private List<String> _conditions = new ArrayList<>();
+    }
+
+    static class Adapter extends XmlAdapter<Element, Night> {
+        @Override
+        public Night unmarshal(Element v) {
+            return restore(v._date, v._alarm, v._window, v._toBed,
+                    v._easeOfFallingAsleep, v._qualityOfSleep, v._easeOfWakingUp,
+                    v._alarmWorked, v._comments, v._moments, v._conditions);
+        }
+
+        @Override
+        public Element marshal(Night v) {
+            Element element = new Element();
+            element._date = v.getDate();
+            element._alarm = v.getAlarm();
+            element._window = v._window;
+            element._toBed = v.getToBed();
+            element._easeOfFallingAsleep = v.getEaseOfFallingAsleep();
+            element._qualityOfSleep = v.getQualityOfSleep();
+            element._easeOfWakingUp = v.getEaseOfWakingUp();
+            element._alarmWorked = v.getRawAlarmWorked();
+            element._comments = v._comments;
+            element._moments = new ArrayList<>(v.getMoments());
+            element._conditions = new ArrayList<>(v.getConditions());
+            return element;
+        }
     }
 }
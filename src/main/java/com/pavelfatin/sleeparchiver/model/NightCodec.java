@@ -0,0 +1,164 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lossless, self-contained binary encoding of a single night.
+ */
+class NightCodec {
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NO_TIME = -1;
+
+    private NightCodec() {
+    }
+
+    static void write(DataOutput out, Night night) throws IOException {
+        out.writeInt(fromDate(night.getDate()));
+        out.writeShort(fromTime(night.getAlarm()));
+        out.writeShort(night.getWindow());
+        out.writeShort(fromTime(night.getToBed()));
+        out.writeByte(night.getEaseOfFallingAsleep().ordinal());
+        out.writeByte(night.getQualityOfSleep().ordinal());
+        out.writeByte(night.getEaseOfWakingUp().ordinal());
+        out.writeByte(fromBoolean(night.getRawAlarmWorked()));
+        writeString(out, night.getRawComments());
+
+        out.writeShort(night.getMomentsCount());
+        for (LocalTime moment : night.getMoments()) {
+            out.writeShort(fromTime(moment));
+        }
+
+        out.writeShort(night.getConditionsCount());
+        for (String condition : night.getConditions()) {
+            writeString(out, condition);
+        }
+    }
+
+    static Night read(DataInput in) throws IOException {
+        LocalDate date = toDate(in.readInt());
+        LocalTime alarm = toTime(in.readShort());
+        int window = in.readShort();
+        LocalTime toBed = toTime(in.readShort());
+        Ease easeOfFallingAsleep = Ease.values()[in.readByte()];
+        Quality qualityOfSleep = Quality.values()[in.readByte()];
+        Ease easeOfWakingUp = Ease.values()[in.readByte()];
+        Boolean alarmWorked = toBoolean(in.readByte());
+        String comments = readString(in);
+
+        int momentsCount = in.readShort();
+        List<LocalTime> moments = new ArrayList<>(momentsCount);
+        for (int i = 0; i < momentsCount; i++) {
+            moments.add(toTime(in.readShort()));
+        }
+
+        int conditionsCount = in.readShort();
+        List<String> conditions = new ArrayList<>(conditionsCount);
+        for (int i = 0; i < conditionsCount; i++) {
+            conditions.add(readString(in));
+        }
+
+        return Night.restore(date, alarm, window, toBed,
+                easeOfFallingAsleep, qualityOfSleep, easeOfWakingUp,
+                alarmWorked, comments, moments, conditions);
+    }
+
+    /**
+     * An order-independent sum of night hashes that, unlike {@link Night#hashCode},
+     * don't depend on the session. Every field is mixed in, so that shifting one field
+     * doesn't cancel out a shift of another.
+     */
+    static long checksumOf(List<Night> nights) {
+        long checksum = 0;
+        for (Night night : nights) {
+            long hash = mix(night.getEpochDay());
+            hash = mix(hash + night.getAlarmMinutes());
+            hash = mix(hash + night.getWindow());
+            hash = mix(hash + night.getToBedMinutes());
+            hash = mix(hash + night.getEaseOfFallingAsleep().ordinal());
+            hash = mix(hash + night.getQualityOfSleep().ordinal());
+            hash = mix(hash + night.getEaseOfWakingUp().ordinal());
+            hash = mix(hash + Boolean.hashCode(night.isAlarmWorked()));
+            hash = mix(hash + night.getComments().hashCode());
+            hash = mix(hash + night.getMoments().hashCode());
+            hash = mix(hash + night.getConditions().hashCode());
+            checksum += hash;
+        }
+        return checksum;
+    }
+
+    // The finalizer of MurmurHash3
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+
+    static int fromDate(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    static LocalDate toDate(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    static int fromTime(LocalTime time) {
+        return time == null ? NO_TIME : time.getHour() * 60 + time.getMinute();
+    }
+
+    static LocalTime toTime(int minutes) {
+        return minutes == NO_TIME ? null : LocalTime.of(minutes / 60, minutes % 60);
+    }
+
+    static int fromBoolean(Boolean value) {
+        return value == null ? 0 : value ? 2 : 1;
+    }
+
+    static Boolean toBoolean(int value) {
+        return value == 0 ? null : value == 2;
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All the nights of an archive in {@link Night#getComparator()} order, i.e. by date with undated nights last.
+ * <p>
+ * Date ranges are found by binary search and returned as sublist views,
+ * which stay valid until the next {@link #update}. Changes are applied in place,
+ * a large batch is merged in a single pass instead.
+ */
+public class NightIndex {
+    // Above this share of the size, a batch is merged rather than applied night by night
+    private static final int MERGE_RATIO = 16;
+
+    private List<Night> _nights;
+
+    public NightIndex() {
+        this(new ArrayList<>());
+    }
+
+    /**
+     * @param nights sorted nights, used as is
+     */
+    public NightIndex(List<Night> nights) {
+        _nights = nights;
+    }
+
+    public static NightIndex of(Collection<Night> nights) {
+        List<Night> sorted = new ArrayList<>(nights);
+        sorted.sort(Night.getComparator());
+        return new NightIndex(sorted);
+    }
+
+    public List<Night> getNights() {
+        return Collections.unmodifiableList(_nights);
+    }
+
+    public int size() {
+        return _nights.size();
+    }
+
+    public boolean isEmpty() {
+        return _nights.isEmpty();
+    }
+
+    /**
+     * @return the index of the first night dated on or after the date, undated nights are last
+     */
+    public int lowerBound(LocalDate date) {
+        int low = 0;
+        int high = _nights.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            LocalDate d = _nights.get(middle).getDate();
+            if (d != null && d.isBefore(date)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public List<Night> month(YearMonth month) {
+        return _nights.subList(lowerBound(month.atDay(1)), lowerBound(month.plusMonths(1).atDay(1)));
+    }
+
+    /**
+     * @return the nights of the days up to the last date, followed by undated nights
+     */
+    public List<Night> lastDays(int days) {
+        LocalDate last = getLastDate();
+        int from = last == null ? 0 : lowerBound(last.minusDays(days - 1));
+        return _nights.subList(from, _nights.size());
+    }
+
+    /**
+     * @return the latest date, or null when there are no dated nights
+     */
+    public LocalDate getLastDate() {
+        int undated = lowerBound(LocalDate.MAX);
+        return undated == 0 ? null : _nights.get(undated - 1).getDate();
+    }
+
+    /**
+     * Removes one equal night for each of the removed, and inserts the added after equal ones.
+     *
+     * @return the nights that were actually removed
+     */
+    public List<Night> update(List<Night> removed, List<Night> added) {
+        if ((removed.size() + added.size()) * MERGE_RATIO > _nights.size()) {
+            return merge(removed, added);
+        }
+
+        List<Night> actuallyRemoved = new ArrayList<>();
+        for (Night night : removed) {
+            int index = indexOf(night);
+            if (index >= 0) {
+                actuallyRemoved.add(_nights.remove(index));
+            }
+        }
+        for (Night night : added) {
+            _nights.add(upperBound(night), night);
+        }
+        return actuallyRemoved;
+    }
+
+    private List<Night> merge(List<Night> removed, List<Night> added) {
+        Map<Night, Integer> pending = new HashMap<>();
+        for (Night night : removed) {
+            pending.merge(night, 1, Integer::sum);
+        }
+        List<Night> sortedAdded = new ArrayList<>(added);
+        Comparator<Night> comparator = Night.getComparator();
+        sortedAdded.sort(comparator);
+
+        List<Night> actuallyRemoved = new ArrayList<>();
+        List<Night> result = new ArrayList<>(_nights.size() + added.size());
+        int j = 0;
+        for (Night night : _nights) {
+            Integer count = pending.get(night);
+            if (count != null && count > 0) {
+                pending.put(night, count - 1);
+                actuallyRemoved.add(night);
+                continue;
+            }
+            while (j < sortedAdded.size() && comparator.compare(sortedAdded.get(j), night) < 0) {
+                result.add(sortedAdded.get(j++));
+            }
+            result.add(night);
+        }
+        result.addAll(sortedAdded.subList(j, sortedAdded.size()));
+        _nights = result;
+        return actuallyRemoved;
+    }
+
+    private int indexOf(Night night) {
+        Comparator<Night> comparator = Night.getComparator();
+        for (int i = lowerBound(night); i < _nights.size() && comparator.compare(_nights.get(i), night) == 0; i++) {
+            if (_nights.get(i).equals(night)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int lowerBound(Night night) {
+        Comparator<Night> comparator = Night.getComparator();
+        int low = 0;
+        int high = _nights.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(_nights.get(middle), night) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(Night night) {
+        Comparator<Night> comparator = Night.getComparator();
+        int low = 0;
+        int high = _nights.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparator.compare(_nights.get(middle), night) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-oriented copy of the nights for aggregations over long histories.
+ * <p>
+ * Rows are kept in the order of {@link Night#getComparator()}, so date ranges
+ * map to row ranges. Every value lives in a primitive array, and aggregations
+ * are plain counted loops over them. Metrics of incomplete nights are stored as
+ * zeros and excluded by the {@code complete} column.
+ * Conditions are stored as bit sets of {@link Conditions} ids, one group of
+ * words per row.
+ * <p>
+ * The nights themselves are not kept, so a store over a mapped archive takes
+ * only the columns. Removed nights are matched to rows by the column values,
+ * rows with the same values being interchangeable for the aggregations.
+ */
+public class NightStore {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int _size;
+    private int[] _dates;
+    private int[] _toBed;
+    private int[] _alarms;
+    private int[] _windows;
+    private int[] _alarmWorked;
+    private int[] _complete;
+    private int[] _durations;
+    private int[] _breaks;
+    private int[] _deepSleep;
+
+    private int _words = 1;
+    private long[] _conditions;
+
+    /**
+     * Nights in {@link Night#getComparator()} order, such as those of {@link NightIndex},
+     * are streamed into the columns without a copy, others are sorted in a copy first.
+     */
+    public NightStore(List<Night> nights) {
+        List<Night> sorted = nights;
+        if (!isSorted(nights)) {
+            sorted = new ArrayList<>(nights);
+            sorted.sort(Night.getComparator());
+        }
+
+        allocate(Math.max(INITIAL_CAPACITY, sorted.size()));
+        for (Night night : sorted) {
+            insert(_size, night);
+        }
+    }
+
+    private static boolean isSorted(List<Night> nights) {
+        Night previous = null;
+        for (Night night : nights) {
+            if (previous != null && Night.getComparator().compare(previous, night) > 0) {
+                return false;
+            }
+            previous = night;
+        }
+        return true;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public LocalDate getDate(int row) {
+        checkRow(row);
+        return _dates[row] == Night.NO_DATE ? null : LocalDate.ofEpochDay(_dates[row]);
+    }
+
+    /**
+     * @return the first row dated on or after the date, undated rows are last
+     */
+    public int rowOf(LocalDate date) {
+        int key = Math.toIntExact(date.toEpochDay());
+        int low = 0;
+        int high = _size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int value = _dates[middle];
+            if (value != Night.NO_DATE && value < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param to exclusive
+     */
+    public Summary summarize(LocalDate from, LocalDate to) {
+        return summarize(rowOf(from), rowOf(to));
+    }
+
+    /**
+     * @param to exclusive
+     */
+    public Summary summarize(int from, int to) {
+        checkRange(from, to);
+        int alarms = 0;
+        for (int row = from; row < to; row++) {
+            alarms += _alarms[row] == Night.NO_TIME ? 0 : 1;
+        }
+        return new Summary(to - from,
+                (int) sum(_complete, from, to),
+                sum(_durations, from, to),
+                sum(_breaks, from, to),
+                sum(_deepSleep, from, to),
+                alarms,
+                (int) sum(_alarmWorked, from, to));
+    }
+
+    /**
+     * @param to exclusive
+     * @return sleep durations of the complete nights in the rows, in ascending order
+     */
+    public int[] durations(int from, int to) {
+        checkRange(from, to);
+        int[] durations = new int[(int) sum(_complete, from, to)];
+        int count = 0;
+        for (int row = from; row < to; row++) {
+            if (_complete[row] != 0) {
+                durations[count++] = _durations[row];
+            }
+        }
+        Arrays.sort(durations);
+        return durations;
+    }
+
+    /**
+     * @param to exclusive
+     * @return the number of nights with the condition in the rows
+     */
+    public int count(String condition, int from, int to) {
+        checkRange(from, to);
+        int id = Conditions.find(condition);
+        if (id < 0) {
+            return 0;
+        }
+        int word = id >>> 6;
+        if (word >= _words) {
+            return 0;
+        }
+        long mask = 1L << id;
+        int count = 0;
+        for (int row = from; row < to; row++) {
+            count += (int) ((_conditions[row * _words + word] & mask) >>> id);
+        }
+        return count;
+    }
+
+    /**
+     * Applies the changes of a command, the same way as {@link Document#update}.
+     */
+    public void update(List<Night> removed, List<Night> added) {
+        for (Night night : removed) {
+            int row = find(night);
+            if (row >= 0) {
+                delete(row);
+            }
+        }
+        for (Night night : added) {
+            insert(upperBound(night), night);
+        }
+    }
+
+    private static long sum(int[] column, int from, int to) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += column[i];
+        }
+        return sum;
+    }
+
+    private int find(Night night) {
+        for (int row = lowerBound(night); row < _size && compare(row, night) == 0; row++) {
+            if (matches(row, night)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    // Date and bed time are already matched by the order
+    private boolean matches(int row, Night night) {
+        if (_alarms[row] != night.getAlarmMinutes()
+                || _windows[row] != night.getWindow()
+                || _alarmWorked[row] != alarmWorkedOf(night)
+                || _complete[row] != (night.isComplete() ? 1 : 0)) {
+            return false;
+        }
+        if (night.isComplete()) {
+            Metrics metrics = night.getMetrics();
+            if (_durations[row] != metrics.getDuration()
+                    || _breaks[row] != metrics.getBreaksCount()
+                    || _deepSleep[row] != metrics.getDeepSleepMinutes()) {
+                return false;
+            }
+        }
+        if (wordsFor(night) > _words) {
+            return false;
+        }
+        long[] conditions = new long[_words];
+        for (int i = 0; i < night.getConditionsCount(); i++) {
+            int id = night.getConditionId(i);
+            conditions[id >>> 6] |= 1L << id;
+        }
+        return Arrays.equals(_conditions, row * _words, (row + 1) * _words, conditions, 0, _words);
+    }
+
+    private static int alarmWorkedOf(Night night) {
+        return night.getAlarm() != null && night.isAlarmWorked() ? 1 : 0;
+    }
+
+    private int lowerBound(Night night) {
+        int low = 0;
+        int high = _size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, night) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(Night night) {
+        int low = 0;
+        int high = _size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(middle, night) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int row, Night night) {
+        return NightsComparator.compare(_dates[row], _toBed[row], night.getEpochDay(), night.getToBedMinutes());
+    }
+
+    private void insert(int row, Night night) {
+        if (_size == _dates.length) {
+            allocate(2 * _dates.length);
+        }
+        int words = wordsFor(night);
+        if (words > _words) {
+            widen(words);
+        }
+
+        int tail = _size - row;
+        System.arraycopy(_dates, row, _dates, row + 1, tail);
+        System.arraycopy(_toBed, row, _toBed, row + 1, tail);
+        System.arraycopy(_alarms, row, _alarms, row + 1, tail);
+        System.arraycopy(_windows, row, _windows, row + 1, tail);
+        System.arraycopy(_alarmWorked, row, _alarmWorked, row + 1, tail);
+        System.arraycopy(_complete, row, _complete, row + 1, tail);
+        System.arraycopy(_durations, row, _durations, row + 1, tail);
+        System.arraycopy(_breaks, row, _breaks, row + 1, tail);
+        System.arraycopy(_deepSleep, row, _deepSleep, row + 1, tail);
+        System.arraycopy(_conditions, row * _words, _conditions, (row + 1) * _words, tail * _words);
+        _size++;
+
+        _dates[row] = night.getEpochDay();
+        _toBed[row] = night.getToBedMinutes();
+        _alarms[row] = night.getAlarmMinutes();
+        _windows[row] = night.getWindow();
+        _alarmWorked[row] = alarmWorkedOf(night);
+        if (night.isComplete()) {
+            Metrics metrics = night.getMetrics();
+            _complete[row] = 1;
+            _durations[row] = metrics.getDuration();
+            _breaks[row] = metrics.getBreaksCount();
+            _deepSleep[row] = metrics.getDeepSleepMinutes();
+        } else {
+            _complete[row] = 0;
+            _durations[row] = 0;
+            _breaks[row] = 0;
+            _deepSleep[row] = 0;
+        }
+        Arrays.fill(_conditions, row * _words, (row + 1) * _words, 0L);
+        for (int i = 0; i < night.getConditionsCount(); i++) {
+            int id = night.getConditionId(i);
+            _conditions[row * _words + (id >>> 6)] |= 1L << id;
+        }
+    }
+
+    private void delete(int row) {
+        int tail = _size - row - 1;
+        System.arraycopy(_dates, row + 1, _dates, row, tail);
+        System.arraycopy(_toBed, row + 1, _toBed, row, tail);
+        System.arraycopy(_alarms, row + 1, _alarms, row, tail);
+        System.arraycopy(_windows, row + 1, _windows, row, tail);
+        System.arraycopy(_alarmWorked, row + 1, _alarmWorked, row, tail);
+        System.arraycopy(_complete, row + 1, _complete, row, tail);
+        System.arraycopy(_durations, row + 1, _durations, row, tail);
+        System.arraycopy(_breaks, row + 1, _breaks, row, tail);
+        System.arraycopy(_deepSleep, row + 1, _deepSleep, row, tail);
+        System.arraycopy(_conditions, (row + 1) * _words, _conditions, row * _words, tail * _words);
+        _size--;
+    }
+
+    private static int wordsFor(Night night) {
+        int max = -1;
+        for (int i = 0; i < night.getConditionsCount(); i++) {
+            max = Math.max(max, night.getConditionId(i));
+        }
+        return (max >> 6) + 1;
+    }
+
+    private void allocate(int capacity) {
+        _dates = resize(_dates, capacity);
+        _toBed = resize(_toBed, capacity);
+        _alarms = resize(_alarms, capacity);
+        _windows = resize(_windows, capacity);
+        _alarmWorked = resize(_alarmWorked, capacity);
+        _complete = resize(_complete, capacity);
+        _durations = resize(_durations, capacity);
+        _breaks = resize(_breaks, capacity);
+        _deepSleep = resize(_deepSleep, capacity);
+        _conditions = _conditions == null ? new long[capacity * _words] : Arrays.copyOf(_conditions, capacity * _words);
+    }
+
+    private static int[] resize(int[] column, int capacity) {
+        return column == null ? new int[capacity] : Arrays.copyOf(column, capacity);
+    }
+
+    private void widen(int words) {
+        long[] conditions = new long[_dates.length * words];
+        for (int row = 0; row < _size; row++) {
+            System.arraycopy(_conditions, row * _words, conditions, row * words, _words);
+        }
+        _conditions = conditions;
+        _words = words;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= _size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + _size);
+        }
+    }
+
+    private void checkRange(int from, int to) {
+        if (from < 0 || to > _size || from > to) {
+            throw new IndexOutOfBoundsException("Rows " + from + "-" + to + " out of " + _size);
+        }
+    }
+
+    public record Summary(int nights, int completeNights, long durationMinutes, long breaks, long deepSleepMinutes,
+                          int alarms, int alarmsWorked) {
+        public static final Summary EMPTY = new Summary(0, 0, 0, 0, 0, 0, 0);
+
+        public Summary plus(Summary other) {
+            return new Summary(nights + other.nights,
+                    completeNights + other.completeNights,
+                    durationMinutes + other.durationMinutes,
+                    breaks + other.breaks,
+                    deepSleepMinutes + other.deepSleepMinutes,
+                    alarms + other.alarms,
+                    alarmsWorked + other.alarmsWorked);
+        }
+
+        public int getAverageDuration() {
+            return completeNights == 0 ? 0 : (int) (durationMinutes / completeNights);
+        }
+
+        public double getAverageBreaks() {
+            return completeNights == 0 ? 0 : (double) breaks / completeNights;
+        }
+
+        public int getAverageDeepSleep() {
+            return completeNights == 0 ? 0 : (int) (deepSleepMinutes / completeNights);
+        }
+    }
+}
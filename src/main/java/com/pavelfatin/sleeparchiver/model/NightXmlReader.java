@@ -0,0 +1,251 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a document one night at a time, applying the same constraints as {@code document.xsd}.
+ */
+class NightXmlReader implements AutoCloseable {
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private static final Pattern DATE_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+    private static final Pattern TIME_PATTERN = Pattern.compile("\\d{2}:\\d{2}");
+
+    private final XMLStreamReader _reader;
+    private final float _version;
+    private boolean _finished;
+
+
+    NightXmlReader(InputStream stream) throws XMLStreamException {
+        _reader = FACTORY.createXMLStreamReader(stream);
+        _reader.nextTag();
+        requireElement("document");
+
+        String version = null;
+        for (int i = 0; i < _reader.getAttributeCount(); i++) {
+            String name = _reader.getAttributeLocalName(i);
+            String namespace = _reader.getAttributeNamespace(i);
+            if (isEmpty(namespace) && name.equals("version")) {
+                version = _reader.getAttributeValue(i);
+            } else if (!"http://www.w3.org/2001/XMLSchema-instance".equals(namespace)) {
+                throw error("Unexpected attribute: " + name);
+            }
+        }
+        if (version == null) {
+            throw error("Missing attribute: version");
+        }
+        try {
+            _version = Float.parseFloat(version.trim());
+        } catch (NumberFormatException e) {
+            throw error("Malformed version: " + version);
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    float getVersion() {
+        return _version;
+    }
+
+    /**
+     * @return the next night, or null when the end of the document is reached
+     */
+    Night read() throws XMLStreamException {
+        if (_finished) {
+            return null;
+        }
+
+        if (_reader.nextTag() == XMLStreamConstants.END_ELEMENT) {
+            _finished = true;
+            return null;
+        }
+        requireElement("night");
+
+        LocalDate date = null;
+        LocalTime alarm = null;
+        int window = 0;
+        LocalTime toBed = null;
+        Ease easeOfFallingAsleep = Ease.Unknown;
+        Quality qualityOfSleep = Quality.Unknown;
+        Ease easeOfWakingUp = Ease.Unknown;
+        Boolean alarmWorked = null;
+        String comments = null;
+
+        for (int i = 0; i < _reader.getAttributeCount(); i++) {
+            if (!isEmpty(_reader.getAttributeNamespace(i))) {
+                throw error("Unexpected attribute: " + _reader.getAttributeName(i));
+            }
+            String value = _reader.getAttributeValue(i);
+            switch (_reader.getAttributeLocalName(i)) {
+                case "date" -> date = parseDate(value);
+                case "alarm" -> alarm = parseTime(value);
+                case "window" -> window = parseWindow(value);
+                case "toBed" -> toBed = parseTime(value);
+                case "easeOfFallingAsleep" -> easeOfFallingAsleep = parseEase(value);
+                case "qualityOfSleep" -> qualityOfSleep = parseQuality(value);
+                case "easeOfWakingUp" -> easeOfWakingUp = parseEase(value);
+                case "alarmWorked" -> alarmWorked = parseBoolean(value);
+                case "comments" -> comments = value;
+                default -> throw error("Unexpected attribute: " + _reader.getAttributeLocalName(i));
+            }
+        }
+
+        List<LocalTime> moments = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+
+        boolean momentsAllowed = true;
+        while (_reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (momentsAllowed && isElement("moments")) {
+                requireNoAttributes();
+                for (String text = readItem("moment"); text != null; text = readItem("moment")) {
+                    moments.add(parseTime(text));
+                }
+            } else if (isElement("conditions")) {
+                momentsAllowed = false;
+                requireNoAttributes();
+                for (String text = readItem("condition"); text != null; text = readItem("condition")) {
+                    conditions.add(text);
+                }
+            } else {
+                throw error("Unexpected element: " + _reader.getName());
+            }
+        }
+
+        return Night.restore(date, alarm, window, toBed,
+                easeOfFallingAsleep, qualityOfSleep, easeOfWakingUp,
+                alarmWorked, comments, moments, conditions);
+    }
+
+    private String readItem(String element) throws XMLStreamException {
+        if (_reader.nextTag() == XMLStreamConstants.END_ELEMENT) {
+            return null;
+        }
+        requireElement(element);
+        requireNoAttributes();
+        return _reader.getElementText();
+    }
+
+    private void requireElement(String name) throws XMLStreamException {
+        if (!isElement(name)) {
+            throw error("Unexpected element: " + _reader.getName());
+        }
+    }
+
+    private boolean isElement(String name) {
+        return _reader.isStartElement()
+                && name.equals(_reader.getLocalName())
+                && NightXmlWriter.NAMESPACE.equals(_reader.getNamespaceURI());
+    }
+
+    private void requireNoAttributes() throws XMLStreamException {
+        if (_reader.getAttributeCount() > 0) {
+            throw error("Unexpected attribute: " + _reader.getAttributeName(0));
+        }
+    }
+
+    private LocalDate parseDate(String value) throws XMLStreamException {
+        if (!DATE_PATTERN.matcher(value).matches()) {
+            throw error("Malformed date: " + value);
+        }
+        try {
+            return Document.parseDate(value);
+        } catch (DateTimeParseException e) {
+            throw error("Malformed date: " + value);
+        }
+    }
+
+    private LocalTime parseTime(String value) throws XMLStreamException {
+        if (!TIME_PATTERN.matcher(value).matches()) {
+            throw error("Malformed time: " + value);
+        }
+        try {
+            return Document.parseTime(value);
+        } catch (DateTimeParseException e) {
+            throw error("Malformed time: " + value);
+        }
+    }
+
+    private int parseWindow(String value) throws XMLStreamException {
+        try {
+            int window = Integer.parseInt(value.trim());
+            if (window >= 0 && window <= 90) {
+                return window;
+            }
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw error("Malformed window: " + value);
+    }
+
+    private Ease parseEase(String value) throws XMLStreamException {
+        for (Ease ease : Ease.members()) {
+            if (ease.format().equals(value)) {
+                return ease;
+            }
+        }
+        throw error("Malformed ease: " + value);
+    }
+
+    private Quality parseQuality(String value) throws XMLStreamException {
+        for (Quality quality : Quality.members()) {
+            if (quality.format().equals(value)) {
+                return quality;
+            }
+        }
+        throw error("Malformed quality: " + value);
+    }
+
+    private Boolean parseBoolean(String value) throws XMLStreamException {
+        return switch (value.trim()) {
+            case "true", "1" -> true;
+            case "false", "0" -> false;
+            default -> throw error("Malformed boolean: " + value);
+        };
+    }
+
+    private XMLStreamException error(String message) {
+        return new XMLStreamException(message, _reader.getLocation());
+    }
+
+    private static boolean isEmpty(String s) {
+        return s == null || s.isEmpty();
+    }
+
+    public void close() throws XMLStreamException {
+        _reader.close();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Writes a document one night at a time, producing the same bytes as the JAXB marshaller
+ * (formatted output, {@code document.xsd} schema location).
+ * <p>
+ * XMLStreamWriter is not used here: it doesn't escape line breaks in attribute values,
+ * so multi-line comments would neither match the JAXB output nor survive a round trip.
+ */
+class NightXmlWriter implements Closeable {
+    static final String NAMESPACE = "http://pavelfatin.com/sleeparchiver";
+    static final String SCHEMA_LOCATION = NAMESPACE + " http://pavelfatin.com/files/sleeparchiver/document.xsd";
+
+    private static final String INDENT = "    ";
+
+    private final Writer _writer;
+    private final float _version;
+    private boolean _empty = true;
+
+
+    NightXmlWriter(OutputStream stream, float version) {
+        _writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        _version = version;
+    }
+
+    void write(Night night) throws IOException {
+        if (_empty) {
+            writeHeader(false);
+            _empty = false;
+        }
+
+        _writer.write(INDENT);
+        _writer.write("<night");
+        writeAttribute("date", Document.formatDate(night.getDate()));
+        writeAttribute("alarm", Document.formatTime(night.getAlarm()));
+        writeAttribute("window", Integer.toString(night.getWindow()));
+        writeAttribute("toBed", Document.formatTime(night.getToBed()));
+        writeAttribute("easeOfFallingAsleep", night.getEaseOfFallingAsleep().format());
+        writeAttribute("qualityOfSleep", night.getQualityOfSleep().format());
+        writeAttribute("easeOfWakingUp", night.getEaseOfWakingUp().format());
+        Boolean alarmWorked = night.getRawAlarmWorked();
+        if (alarmWorked != null) {
+            writeAttribute("alarmWorked", alarmWorked.toString());
+        }
+        String comments = night.getRawComments();
+        if (comments != null) {
+            writeRequiredAttribute("comments", comments);
+        }
+        _writer.write(">\n");
+
+        writeMoments(night.getMoments());
+        writeConditions(night.getConditions());
+
+        _writer.write(INDENT);
+        _writer.write("</night>\n");
+    }
+
+    private void writeHeader(boolean empty) throws IOException {
+        _writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        _writer.write("<document xmlns=\"" + NAMESPACE + "\"" +
+                " xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"");
+        writeAttribute("version", Float.toString(_version));
+        writeAttribute("xsi:schemaLocation", SCHEMA_LOCATION);
+        _writer.write(empty ? "/>\n" : ">\n");
+    }
+
+    private void writeMoments(List<LocalTime> moments) throws IOException {
+        if (moments.isEmpty()) {
+            _writer.write(INDENT + INDENT + "<moments/>\n");
+            return;
+        }
+        _writer.write(INDENT + INDENT + "<moments>\n");
+        for (LocalTime moment : moments) {
+            writeElement("moment", Document.formatTime(moment));
+        }
+        _writer.write(INDENT + INDENT + "</moments>\n");
+    }
+
+    private void writeConditions(List<String> conditions) throws IOException {
+        if (conditions.isEmpty()) {
+            _writer.write(INDENT + INDENT + "<conditions/>\n");
+            return;
+        }
+        _writer.write(INDENT + INDENT + "<conditions>\n");
+        for (String condition : conditions) {
+            writeElement("condition", condition);
+        }
+        _writer.write(INDENT + INDENT + "</conditions>\n");
+    }
+
+    private void writeElement(String name, String text) throws IOException {
+        _writer.write(INDENT + INDENT + INDENT + "<");
+        _writer.write(name);
+        _writer.write(">");
+        escape(text, false);
+        _writer.write("</");
+        _writer.write(name);
+        _writer.write(">\n");
+    }
+
+    private void writeAttribute(String name, String value) throws IOException {
+        if (!value.isEmpty()) {
+            writeRequiredAttribute(name, value);
+        }
+    }
+
+    private void writeRequiredAttribute(String name, String value) throws IOException {
+        _writer.write(' ');
+        _writer.write(name);
+        _writer.write("=\"");
+        escape(value, true);
+        _writer.write('"');
+    }
+
+    // Mirrors the JAXB minimum escape handler
+    private void escape(String s, boolean attribute) throws IOException {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            String replacement = switch (s.charAt(i)) {
+                case '&' -> "&amp;";
+                case '<' -> "&lt;";
+                case '>' -> "&gt;";
+                case '\r' -> "&#13;";
+                case '\n' -> attribute ? "&#10;" : null;
+                case '"' -> attribute ? "&quot;" : null;
+                default -> null;
+            };
+            if (replacement != null) {
+                _writer.write(s, start, i - start);
+                _writer.write(replacement);
+                start = i + 1;
+            }
+        }
+        _writer.write(s, start, s.length() - start);
+    }
+
+    public void close() throws IOException {
+        if (_empty) {
+            writeHeader(true);
+        } else {
+            _writer.write("</document>\n");
+        }
+        _writer.close();
+    }
+}
@@ -26,8 +26,23 @@ public class NightsComparator implements Comparator<Night> {
     private static final Comparator<LocalDate> DATE_COMPARATOR = Comparator.nullsLast(Comparator.naturalOrder());
     private static final Comparator<LocalTime> TIME_COMPARATOR = Comparator.nullsLast(Comparator.naturalOrder());
 
+    // Same order as the static method, on the packed values
     public int compare(Night n1, Night n2) {
-        return compare(n1.getDate(), n2.getDate(), n1.getToBed(), n2.getToBed());
+        return compare(n1.getEpochDay(), n1.getToBedMinutes(), n2.getEpochDay(), n2.getToBedMinutes());
+    }
+
+    static int compare(int date1, int toBed1, int date2, int toBed2) {
+        int dateComparison = compareNullsLast(date1, date2, Night.NO_DATE);
+        return dateComparison == 0
+                ? compareNullsLast(toBed1, toBed2, Night.NO_TIME)
+                : dateComparison;
+    }
+
+    private static int compareNullsLast(int v1, int v2, int none) {
+        if (v1 == v2) {
+            return 0;
+        }
+        return v1 == none ? 1 : v2 == none ? -1 : Integer.compare(v1, v2);
     }
 
     static int compare(LocalDate d1, LocalDate d2, LocalTime t1, LocalTime t2) {
@@ -0,0 +1,192 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip stream that deflates fixed-size blocks of input in parallel.
+ * <p>
+ * Each block is compressed independently, primed with the last 32 KiB of the
+ * previous block as a dictionary and ended with a sync flush, so the blocks
+ * concatenate into a single ordinary gzip member (the same scheme as pigz).
+ */
+class ParallelGzipOutputStream extends FilterOutputStream {
+    static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final byte[] HEADER = {0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final ForkJoinPool _pool;
+    private final int _limit;
+    private final Queue<Future<byte[]>> _pending = new ArrayDeque<>();
+    private final CRC32 _crc = new CRC32();
+    private long _size;
+
+    private byte[] _block = new byte[BLOCK_SIZE];
+    private int _count;
+    private byte[] _previous;
+    private boolean _finished;
+
+    ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this(out, ForkJoinPool.commonPool());
+    }
+
+    ParallelGzipOutputStream(OutputStream out, ForkJoinPool pool) throws IOException {
+        super(out);
+        _pool = pool;
+        _limit = 2 * pool.getParallelism();
+        out.write(HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (_count == BLOCK_SIZE) {
+            submit(false);
+        }
+        _block[_count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_count == BLOCK_SIZE) {
+                submit(false);
+            }
+            int n = Math.min(len, BLOCK_SIZE - _count);
+            System.arraycopy(b, off, _block, _count, n);
+            _count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Pending blocks are always flushed with the last one, as an early flush
+     * would only make the compression worse.
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void finish() throws IOException {
+        if (_finished) {
+            return;
+        }
+        submit(true);
+        while (!_pending.isEmpty()) {
+            out.write(take());
+        }
+        writeInt((int) _crc.getValue());
+        writeInt((int) _size);
+        _finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        byte[] block = _count == BLOCK_SIZE ? _block : Arrays.copyOf(_block, _count);
+        byte[] dictionary = _previous;
+
+        _crc.update(block);
+        _size += block.length;
+
+        _pending.add(_pool.submit(() -> deflate(block, dictionary, last)));
+        _previous = block;
+        _block = new byte[BLOCK_SIZE];
+        _count = 0;
+
+        while (_pending.size() > _limit || (!_pending.isEmpty() && _pending.peek().isDone())) {
+            out.write(take());
+        }
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            return _pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    private static byte[] deflate(byte[] block, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                int length = Math.min(dictionary.length, DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, dictionary.length - length, length);
+            }
+            deflater.setInput(block);
+
+            byte[] result = new byte[block.length + block.length / 8 + 64];
+            int size = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, 2 * result.length);
+                    }
+                    size += deflater.deflate(result, size, result.length - size);
+                }
+            } else {
+                while (true) {
+                    if (size == result.length) {
+                        result = Arrays.copyOf(result, 2 * result.length);
+                    }
+                    int n = deflater.deflate(result, size, result.length - size, Deflater.SYNC_FLUSH);
+                    size += n;
+                    if (size < result.length) {
+                        break;
+                    }
+                }
+            }
+            return Arrays.copyOf(result, size);
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.io.CharArrayReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Imports large data files by parsing chunks of lines in parallel.
+ * <p>
+ * The file is mapped and cut after line feeds, which is safe for any
+ * ASCII-compatible charset. Every chunk is parsed and sorted on its own,
+ * then the sorted runs are merged, keeping the order of equal nights as
+ * in the file, the same as a sequential import followed by a stable sort.
+ */
+class ParallelImport {
+    static final int CHUNK_SIZE = 1024 * 1024;
+
+    private ParallelImport() {
+    }
+
+    static boolean isApplicable(File file) {
+        long length = file.length();
+        return length > CHUNK_SIZE && length <= Integer.MAX_VALUE
+                && Runtime.getRuntime().availableProcessors() > 1;
+    }
+
+    /**
+     * @throws ImportException if a line is malformed, the line is counted from the start of the file
+     */
+    static List<Night> read(File file, Charset charset) throws IOException {
+        return read(file, charset, CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    static List<Night> read(File file, Charset charset, int chunkSize, ForkJoinPool pool) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        List<Future<Chunk>> futures = new ArrayList<>();
+        int start = 0;
+        while (start < buffer.limit()) {
+            int end = boundaryAfter(buffer, Math.min(start + chunkSize, buffer.limit()));
+            int from = start;
+            futures.add(pool.submit(() -> parse(buffer.slice(from, end - from), charset)));
+            start = end;
+        }
+
+        List<List<Night>> runs = new ArrayList<>();
+        int lines = 0;
+        for (Future<Chunk> future : futures) {
+            Chunk chunk = get(future);
+            if (chunk.error() != null) {
+                throw new ImportException(lines + chunk.error().getLine(), chunk.error().getCause());
+            }
+            runs.add(chunk.nights());
+            lines += chunk.lines();
+        }
+
+        return merge(runs, Night.getComparator());
+    }
+
+    // Position just past the first line feed at or after the index
+    private static int boundaryAfter(MappedByteBuffer buffer, int index) {
+        int limit = buffer.limit();
+        for (int i = index; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    private static Chunk parse(ByteBuffer bytes, Charset charset) throws IOException {
+        CharBuffer chars = charset.decode(bytes);
+        List<Night> nights = new ArrayList<>();
+        try {
+            int lines = Document.readData(
+                    new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(), chars.remaining()), nights);
+            nights.sort(Night.getComparator());
+            return new Chunk(nights, lines, null);
+        } catch (ImportException e) {
+            return new Chunk(null, 0, e);
+        }
+    }
+
+    private static Chunk get(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // Pairwise merging of neighbours, preferring the earlier run on ties
+    static <T> List<T> merge(List<List<T>> runs, Comparator<? super T> comparator) {
+        if (runs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        while (runs.size() > 1) {
+            List<List<T>> merged = new ArrayList<>((runs.size() + 1) / 2);
+            for (int i = 0; i < runs.size(); i += 2) {
+                merged.add(i + 1 < runs.size() ? merge(runs.get(i), runs.get(i + 1), comparator) : runs.get(i));
+            }
+            runs = merged;
+        }
+        return runs.get(0);
+    }
+
+    private static <T> List<T> merge(List<T> left, List<T> right, Comparator<? super T> comparator) {
+        List<T> result = new ArrayList<>(left.size() + right.size());
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            if (comparator.compare(right.get(j), left.get(i)) < 0) {
+                result.add(right.get(j++));
+            } else {
+                result.add(left.get(i++));
+            }
+        }
+        result.addAll(left.subList(i, left.size()));
+        result.addAll(right.subList(j, right.size()));
+        return result;
+    }
+
+    private record Chunk(List<Night> nights, int lines, ImportException error) {
+    }
+}
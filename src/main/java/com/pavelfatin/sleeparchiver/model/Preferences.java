@@ -24,11 +24,16 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 @XmlRootElement(name = "preferences", namespace = "")
 @XmlAccessorType(value = XmlAccessType.FIELD)
 public class Preferences {
+    private static final XmlBinding<Preferences> BINDING = new XmlBinding<>(Preferences.class,
+            new Class<?>[]{Preferences.class}, null,
+            Map.of(Marshaller.JAXB_FORMATTED_OUTPUT, true));
+
     @XmlTransient
     private File _file;
 
@@ -74,10 +79,20 @@ public class Preferences {
     @XmlElement(name = "displayMonth", namespace = "")
     private String _displayMonth;
 
+    @XmlElement(name = "timelineView", namespace = "")
+    private boolean _timelineView;
+
     // Sort order
     @XmlElement(name = "sortOrder", namespace = "")
     private String _sortOrder = "desc";
 
+    // Undo history
+    @XmlElement(name = "undoLimit", namespace = "")
+    private int _undoLimit = 100;
+
+    @XmlElement(name = "undoMemory", namespace = "")
+    private int _undoMemory = 64;
+
     // Debug logging
     @XmlElement(name = "debugLogging", namespace = "")
     private boolean _debugLogging;
@@ -155,6 +170,25 @@ public class Preferences {
         _sortOrder = order;
     }
 
+    public int getUndoLimit() {
+        return _undoLimit;
+    }
+
+    public void setUndoLimit(int steps) {
+        _undoLimit = steps;
+    }
+
+    /**
+     * @return the memory limit of the undo history, in megabytes
+     */
+    public int getUndoMemory() {
+        return _undoMemory;
+    }
+
+    public void setUndoMemory(int megabytes) {
+        _undoMemory = megabytes;
+    }
+
     public boolean isDebugLogging() {
         return _debugLogging;
     }
@@ -203,6 +237,14 @@ public class Preferences {
         _displayDays = days;
     }
 
+    public boolean isTimelineView() {
+        return _timelineView;
+    }
+
+    public void setTimelineView(boolean enabled) {
+        _timelineView = enabled;
+    }
+
     public String getDisplayMonth() {
         return _displayMonth;
     }
@@ -294,13 +336,7 @@ public class Preferences {
     }
 
     static Preferences loadFrom(InputStream stream) throws JAXBException {
-        Unmarshaller unmarshaller = createContext().createUnmarshaller();
-        unmarshaller.setEventHandler(new ValidationHandler());
-        return (Preferences) unmarshaller.unmarshal(stream);
-    }
-
-    private static JAXBContext createContext() throws JAXBException {
-        return JAXBContext.newInstance(Preferences.class);
+        return BINDING.unmarshal(stream);
     }
 
     public void save() throws IOException {
@@ -313,10 +349,7 @@ public class Preferences {
     }
 
     void saveTo(OutputStream stream) throws JAXBException {
-        Marshaller marshaller = createContext().createMarshaller();
-        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-        marshaller.setEventHandler(new ValidationHandler());
-        marshaller.marshal(this, stream);
+        BINDING.marshal(this, stream);
     }
 
     @Override
@@ -334,6 +367,9 @@ public class Preferences {
                 && _gridStartHour == other._gridStartHour
                 && _gridEndHour == other._gridEndHour
                 && _displayDays == other._displayDays
+                && _timelineView == other._timelineView
+                && _undoLimit == other._undoLimit
+                && _undoMemory == other._undoMemory
                 && Objects.equals(_file, other._file)
                 && Objects.equals(_language, other._language)
                 && Objects.equals(_files, other._files)
@@ -349,7 +385,7 @@ public class Preferences {
         return Objects.hash(_file, _language, _backups, _prefill,
                 _history, _historyLimit, _openRecent, _files,
                 _debugLogging, _manualGrid, _gridStartHour, _gridEndHour,
-                _displayMode, _displayDays, _displayMonth,
+                _displayMode, _displayDays, _displayMonth, _timelineView, _undoLimit, _undoMemory,
                 _lastPort, _lastModel, _sortOrder);
     }
 
@@ -0,0 +1,147 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-month summaries of a {@link NightStore}, computed on request.
+ * <p>
+ * Whole months of a range are taken from the cache, only the partial months
+ * at its edges are read from the store. After the store is updated,
+ * the months of the changed nights must be invalidated.
+ */
+public class SummaryCache {
+    private final NightStore _store;
+    private final Map<YearMonth, Month> _months = new HashMap<>();
+
+    public SummaryCache(NightStore store) {
+        _store = store;
+    }
+
+    public void invalidate(Collection<Night> nights) {
+        for (Night night : nights) {
+            LocalDate date = night.getDate();
+            if (date != null) {
+                _months.remove(YearMonth.from(date));
+            }
+        }
+    }
+
+    /**
+     * @param to exclusive
+     */
+    public Statistics statistics(LocalDate from, LocalDate to) {
+        if (!from.isBefore(to)) {
+            return Statistics.of(NightStore.Summary.EMPTY, new int[0]);
+        }
+
+        YearMonth first = from.getDayOfMonth() == 1 ? YearMonth.from(from) : YearMonth.from(from).plusMonths(1);
+        YearMonth last = YearMonth.from(to);
+        if (!first.isBefore(last)) {
+            return Statistics.of(compute(from, to));
+        }
+
+        List<Month> months = new ArrayList<>();
+        months.add(compute(from, first.atDay(1)));
+        for (YearMonth month = first; month.isBefore(last); month = month.plusMonths(1)) {
+            months.add(monthOf(month));
+        }
+        months.add(compute(last.atDay(1), to));
+        return Statistics.of(months);
+    }
+
+    private Month monthOf(YearMonth month) {
+        Month result = _months.get(month);
+        if (result == null) {
+            result = compute(month.atDay(1), month.plusMonths(1).atDay(1));
+            _months.put(month, result);
+        }
+        return result;
+    }
+
+    private Month compute(LocalDate from, LocalDate to) {
+        int begin = _store.rowOf(from);
+        int end = Math.max(begin, _store.rowOf(to));
+        return new Month(_store.summarize(begin, end), _store.durations(begin, end));
+    }
+
+    int size() {
+        return _months.size();
+    }
+
+    private record Month(NightStore.Summary summary, int[] durations) {
+    }
+
+    /**
+     * Averages and ratios are {@code NaN} when there is nothing to average.
+     */
+    public record Statistics(int nights, int completeNights, double meanDuration, double medianDuration,
+                             double breaksPerNight, double deepSleepShare, double alarmSuccessRate) {
+
+        private static Statistics of(Month month) {
+            return of(month.summary(), month.durations());
+        }
+
+        private static Statistics of(List<Month> months) {
+            NightStore.Summary summary = NightStore.Summary.EMPTY;
+            int count = 0;
+            for (Month month : months) {
+                summary = summary.plus(month.summary());
+                count += month.durations().length;
+            }
+            int[] durations = new int[count];
+            int position = 0;
+            for (Month month : months) {
+                System.arraycopy(month.durations(), 0, durations, position, month.durations().length);
+                position += month.durations().length;
+            }
+            Arrays.sort(durations);
+            return of(summary, durations);
+        }
+
+        private static Statistics of(NightStore.Summary summary, int[] durations) {
+            return new Statistics(summary.nights(), summary.completeNights(),
+                    ratio(summary.durationMinutes(), summary.completeNights()),
+                    median(durations),
+                    ratio(summary.breaks(), summary.completeNights()),
+                    ratio(summary.deepSleepMinutes(), summary.durationMinutes()),
+                    ratio(summary.alarmsWorked(), summary.alarms()));
+        }
+
+        private static double ratio(long value, long total) {
+            return total == 0 ? Double.NaN : (double) value / total;
+        }
+
+        private static double median(int[] sorted) {
+            int n = sorted.length;
+            if (n == 0) {
+                return Double.NaN;
+            }
+            return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2.0;
+        }
+    }
+}
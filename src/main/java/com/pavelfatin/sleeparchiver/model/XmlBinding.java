@@ -0,0 +1,106 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+import jakarta.xml.bind.Unmarshaller;
+
+import javax.xml.validation.Schema;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Shared JAXB binding for a root class.
+ * <p>
+ * The context is created once, on first use, and each thread reuses its own
+ * configured (validating) marshaller and unmarshaller, because JAXB context creation
+ * is expensive while marshallers themselves are not thread-safe.
+ */
+class XmlBinding<T> {
+    private final Class<T> _type;
+    private final Class<?>[] _classes;
+    private final Supplier<Schema> _schemaSupplier;
+    private final Map<String, Object> _properties;
+
+    private final ThreadLocal<Marshaller> _marshallers = new ThreadLocal<>();
+    private final ThreadLocal<Unmarshaller> _unmarshallers = new ThreadLocal<>();
+
+    private volatile JAXBContext _context;
+    private volatile Schema _schema;
+
+
+    XmlBinding(Class<T> type, Class<?>[] classes, Supplier<Schema> schema, Map<String, Object> properties) {
+        _type = type;
+        _classes = classes;
+        _schemaSupplier = schema;
+        _properties = properties;
+    }
+
+    T unmarshal(InputStream stream) throws JAXBException {
+        return _type.cast(getUnmarshaller().unmarshal(stream));
+    }
+
+    void marshal(T value, OutputStream stream) throws JAXBException {
+        getMarshaller().marshal(value, stream);
+    }
+
+    JAXBContext getContext() throws JAXBException {
+        JAXBContext context = _context;
+        if (context == null) {
+            synchronized (this) {
+                context = _context;
+                if (context == null) {
+                    context = JAXBContext.newInstance(_classes);
+                    _schema = _schemaSupplier == null ? null : _schemaSupplier.get();
+                    _context = context;
+                }
+            }
+        }
+        return context;
+    }
+
+    private Marshaller getMarshaller() throws JAXBException {
+        Marshaller marshaller = _marshallers.get();
+        if (marshaller == null) {
+            marshaller = getContext().createMarshaller();
+            marshaller.setEventHandler(new ValidationHandler());
+            marshaller.setSchema(_schema);
+            for (Map.Entry<String, Object> entry : _properties.entrySet()) {
+                marshaller.setProperty(entry.getKey(), entry.getValue());
+            }
+            _marshallers.set(marshaller);
+        }
+        return marshaller;
+    }
+
+    private Unmarshaller getUnmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = _unmarshallers.get();
+        if (unmarshaller == null) {
+            unmarshaller = getContext().createUnmarshaller();
+            unmarshaller.setEventHandler(new ValidationHandler());
+            unmarshaller.setSchema(_schema);
+            _unmarshallers.set(unmarshaller);
+        }
+        return unmarshaller;
+    }
+}
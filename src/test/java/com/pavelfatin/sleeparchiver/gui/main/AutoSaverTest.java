@@ -0,0 +1,74 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.pavelfatin.sleeparchiver.model.Document;
+import com.pavelfatin.sleeparchiver.model.Night;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class AutoSaverTest {
+    @Test
+    public void runtimeFailure() {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        AutoSaver saver = new AutoSaver((state, error) ->
+                events.add(state + (error == null ? "" : ": " + error.getMessage())), Runnable::run);
+
+        saver.submit(failing(new IllegalStateException("broken")), new ArrayList<>(), new ArrayList<>(), false);
+        saver.flush();
+
+        assertThat(saver.isPending(), equalTo(false));
+        assertThat(saver.isFailed(), equalTo(true));
+        assertThat(events, equalTo(List.of("SAVING", "FAILED: broken")));
+    }
+
+    @Test
+    public void ioFailure() {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        AutoSaver saver = new AutoSaver((state, error) ->
+                events.add(state + (error == null ? "" : ": " + error.getMessage())), Runnable::run);
+
+        saver.submit(failing(null), new ArrayList<>(), new ArrayList<>(), false);
+        saver.flush();
+
+        assertThat(saver.isPending(), equalTo(false));
+        assertThat(saver.isFailed(), equalTo(true));
+        assertThat(events, equalTo(List.of("SAVING", "FAILED: disk")));
+    }
+
+    // Throws the exception on update, or an IOException when it's null
+    private static Document failing(RuntimeException exception) {
+        return new Document() {
+            @Override
+            public void update(List<Night> removed, List<Night> added) throws IOException {
+                if (exception != null) {
+                    throw exception;
+                }
+                throw new IOException("disk");
+            }
+        };
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.commands;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.pavelfatin.sleeparchiver.model.Night;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ImportingTest {
+    @Test
+    public void merge() {
+        ObservableList<Night> items = FXCollections.observableArrayList(night(1), night(3), night(5));
+        Night existing = items.get(1);
+        Night duplicate = night(3);
+
+        Importing command = new Importing("import", items, new TestSelectionModel<>(items),
+                Night.getComparator(), newList(night(4), duplicate, night(0)));
+        command.execute();
+
+        assertThat(items, equalTo(newList(night(0), night(1), night(3), night(3), night(4), night(5))));
+        assertThat(items.get(2) == existing, equalTo(true));
+        assertThat(items.get(3) == duplicate, equalTo(true));
+    }
+
+    @Test
+    public void descendingOrder() {
+        ObservableList<Night> items = FXCollections.observableArrayList(night(5), night(3), night(1));
+
+        Importing command = new Importing("import", items, new TestSelectionModel<>(items),
+                Night.getComparator().reversed(), newList(night(2), night(6)));
+        command.execute();
+
+        assertThat(items, equalTo(newList(night(6), night(5), night(3), night(2), night(1))));
+    }
+
+    @Test
+    public void selection() {
+        ObservableList<Night> items = FXCollections.observableArrayList(night(1), night(3), night(5));
+        TestSelectionModel<Night> selection = new TestSelectionModel<>(items);
+        selection.select(0);
+
+        Importing command = new Importing("import", items, selection,
+                Night.getComparator(), newList(night(4), night(3), night(0)));
+        command.execute();
+
+        assertThat(selection.getSelectedIndices(), equalTo(newList(0, 3, 4)));
+
+        command.revert();
+
+        assertThat(selection.getSelectedIndices(), equalTo(newList(0)));
+    }
+
+    @Test
+    public void revertByIdentity() {
+        ObservableList<Night> items = FXCollections.observableArrayList(night(1), night(3), night(5));
+        List<Night> original = new ArrayList<>(items);
+
+        Importing command = new Importing("import", items, new TestSelectionModel<>(items),
+                Night.getComparator(), newList(night(3), night(3), night(7)));
+        command.execute();
+        command.revert();
+
+        assertThat(items, equalTo(original));
+        for (int i = 0; i < original.size(); i++) {
+            assertThat(items.get(i) == original.get(i), equalTo(true));
+        }
+
+        command.execute();
+
+        assertThat(items.size(), equalTo(6));
+    }
+
+    private static Night night(int day) {
+        return new Night(LocalDate.of(2009, 1, 1).plusDays(day), LocalTime.of(7, 0), 20, LocalTime.of(23, 0),
+                newList(LocalTime.of(3, 0)));
+    }
+}
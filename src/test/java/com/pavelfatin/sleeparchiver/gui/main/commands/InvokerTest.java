@@ -0,0 +1,165 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.commands;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class InvokerTest {
+    @Test
+    public void stepLimit() {
+        Invoker invoker = new Invoker();
+        invoker.setLimits(3, Long.MAX_VALUE);
+
+        for (int i = 1; i <= 5; i++) {
+            invoker.invoke(new TestCommand("c" + i, 100));
+        }
+
+        assertThat(invoker.getSize(), equalTo(3));
+        assertThat(invoker.getUndoCommandName(), equalTo("c5"));
+        invoker.undo();
+        invoker.undo();
+        invoker.undo();
+        assertThat(invoker.isUndoAvailable(), equalTo(false));
+    }
+
+    @Test
+    public void memoryLimit() {
+        Invoker invoker = new Invoker();
+        invoker.setLimits(Integer.MAX_VALUE, 250);
+
+        for (int i = 1; i <= 5; i++) {
+            invoker.invoke(new TestCommand("c" + i, 100));
+        }
+
+        assertThat(invoker.getSize(), equalTo(2));
+        assertThat(invoker.getFootprint(), equalTo(200L));
+    }
+
+    @Test
+    public void currentCommandIsKept() {
+        Invoker invoker = new Invoker();
+        invoker.setLimits(Integer.MAX_VALUE, 10);
+
+        invoker.invoke(new TestCommand("c1", 100));
+        invoker.invoke(new TestCommand("c2", 100));
+
+        assertThat(invoker.getSize(), equalTo(1));
+        assertThat(invoker.getUndoCommandName(), equalTo("c2"));
+    }
+
+    @Test
+    public void redoableCommandsAreKept() {
+        Invoker invoker = new Invoker();
+        for (int i = 1; i <= 4; i++) {
+            invoker.invoke(new TestCommand("c" + i, 100));
+        }
+        invoker.undo();
+        invoker.undo();
+
+        invoker.setLimits(1, Long.MAX_VALUE);
+
+        assertThat(invoker.getSize(), equalTo(3));
+        assertThat(invoker.getRedoCount(), equalTo(2));
+        assertThat(invoker.getUndoCommandName(), equalTo("c2"));
+        assertThat(invoker.getRedoCommandName(), equalTo("c3"));
+
+        invoker.undo();
+        invoker.setLimits(1, Long.MAX_VALUE);
+
+        assertThat(invoker.getSize(), equalTo(3));
+        assertThat(invoker.isUndoAvailable(), equalTo(false));
+    }
+
+    @Test
+    public void versionFollowsUndoAndRedo() {
+        Invoker invoker = new Invoker();
+        long saved = invoker.getVersion();
+
+        invoker.invoke(new TestCommand("c1", 100));
+        long first = invoker.getVersion();
+
+        assertThat(first == saved, equalTo(false));
+
+        invoker.undo();
+
+        assertThat(invoker.getVersion(), equalTo(saved));
+
+        invoker.redo();
+
+        assertThat(invoker.getVersion(), equalTo(first));
+
+        invoker.undo();
+        invoker.invoke(new TestCommand("c2", 100));
+
+        assertThat(invoker.getVersion() == saved || invoker.getVersion() == first, equalTo(false));
+    }
+
+    @Test
+    public void versionSurvivesEviction() {
+        Invoker invoker = new Invoker();
+        invoker.setLimits(2, Long.MAX_VALUE);
+        invoker.invoke(new TestCommand("c1", 100));
+        long saved = invoker.getVersion();
+
+        invoker.invoke(new TestCommand("c2", 100));
+        invoker.invoke(new TestCommand("c3", 100));
+        invoker.undo();
+        invoker.undo();
+
+        assertThat(invoker.isUndoAvailable(), equalTo(false));
+        assertThat(invoker.getVersion(), equalTo(saved));
+    }
+
+    @Test
+    public void resetStartsNewVersion() {
+        Invoker invoker = new Invoker();
+        long saved = invoker.getVersion();
+
+        invoker.reset();
+
+        assertThat(invoker.getVersion() == saved, equalTo(false));
+    }
+
+    private static class TestCommand implements Command {
+        private final String _name;
+        private final long _footprint;
+
+        TestCommand(String name, long footprint) {
+            _name = name;
+            _footprint = footprint;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public void execute() {
+        }
+
+        public void revert() {
+        }
+
+        public long getFootprint() {
+            return _footprint;
+        }
+    }
+}
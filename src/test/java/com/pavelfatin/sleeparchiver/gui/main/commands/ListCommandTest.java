@@ -0,0 +1,76 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.commands;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+
+public class ListCommandTest {
+    // Strings of the same length are equal
+    private static final Comparator<String> BY_LENGTH = Comparator.comparingInt(String::length);
+
+    @Test
+    public void empty() {
+        assertThat(commandOf().findIndexFor("a", BY_LENGTH), equalTo(0));
+    }
+
+    @Test
+    public void afterEqualItems() {
+        TestCommand command = commandOf("a", "bb", "cc", "dd", "eee");
+
+        assertThat(command.findIndexFor("xx", BY_LENGTH), equalTo(4));
+        assertThat(command.findIndexFor("x", BY_LENGTH), equalTo(1));
+        assertThat(command.findIndexFor("xxx", BY_LENGTH), equalTo(5));
+    }
+
+    @Test
+    public void bounds() {
+        TestCommand command = commandOf("bb", "ccc");
+
+        assertThat(command.findIndexFor("", BY_LENGTH), equalTo(0));
+        assertThat(command.findIndexFor("xxxx", BY_LENGTH), equalTo(2));
+    }
+
+    private static TestCommand commandOf(String... items) {
+        ObservableList<String> list = FXCollections.observableArrayList(items);
+        return new TestCommand(list);
+    }
+
+    private static class TestCommand extends ListCommand<String> {
+        TestCommand(ObservableList<String> items) {
+            super("test", items, new TestSelectionModel<>(items));
+        }
+
+        protected void doExecute() {
+        }
+
+        protected void doRevert() {
+        }
+
+        public long getFootprint() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.commands;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.pavelfatin.sleeparchiver.model.Night;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplacingTest {
+    @Test
+    public void onlyChangedNightsAreKept() {
+        ObservableList<Night> items = FXCollections.observableArrayList(night(1), night(2), night(3));
+        List<Night> original = new ArrayList<>(items);
+
+        // Equal copies of the unchanged nights, as an edit may produce
+        List<Night> replacement = newList(night(1), night(2).with(newList("A")), night(3));
+        Replacing command = new Replacing("replace", items, new TestSelectionModel<>(items), replacement);
+
+        command.execute();
+
+        assertThat(command.getFootprint(), equalTo(AbstractCommand.footprintOf(2, 1)));
+        assertThat(items, equalTo(replacement));
+        assertThat(items.get(0) == original.get(0), equalTo(true));
+        assertThat(items.get(2) == original.get(2), equalTo(true));
+
+        command.revert();
+
+        assertThat(items, equalTo(original));
+        assertThat(items.get(1) == original.get(1), equalTo(true));
+
+        command.execute();
+
+        assertThat(items, equalTo(replacement));
+    }
+
+    @Test
+    public void sizeChange() {
+        ObservableList<Night> items = FXCollections.observableArrayList(night(1), night(2));
+        List<Night> original = new ArrayList<>(items);
+
+        Replacing command = new Replacing("replace", items, new TestSelectionModel<>(items), newList(night(3)));
+
+        command.execute();
+
+        assertThat(items, equalTo(newList(night(3))));
+        assertThat(command.getFootprint(), equalTo(AbstractCommand.footprintOf(3, 0)));
+
+        command.revert();
+
+        assertThat(items, equalTo(original));
+    }
+
+    @Test
+    public void selectionIsKept() {
+        ObservableList<Night> items = FXCollections.observableArrayList(night(1), night(2), night(3));
+        TestSelectionModel<Night> selection = new TestSelectionModel<>(items);
+        selection.select(1);
+
+        Replacing command = new Replacing("replace", items, selection,
+                newList(night(1), night(2).with(newList("A")), night(3)));
+        command.execute();
+
+        assertThat(selection.getSelectedIndices(), equalTo(newList(1)));
+    }
+
+    private static Night night(int day) {
+        return new Night(LocalDate.of(2009, 1, day), LocalTime.of(7, 0), 20, LocalTime.of(23, 0),
+                newList(LocalTime.of(3, 0)));
+    }
+}
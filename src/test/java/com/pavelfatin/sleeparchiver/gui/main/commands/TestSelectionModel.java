@@ -0,0 +1,125 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.commands;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.control.MultipleSelectionModel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A selection over a list, without the controls that need the FX toolkit
+class TestSelectionModel<T> extends MultipleSelectionModel<T> {
+    private final List<T> _items;
+    private final ObservableList<Integer> _indices = FXCollections.observableArrayList();
+
+    TestSelectionModel(List<T> items) {
+        _items = items;
+    }
+
+    @Override
+    public ObservableList<Integer> getSelectedIndices() {
+        return _indices;
+    }
+
+    @Override
+    public ObservableList<T> getSelectedItems() {
+        List<T> items = new ArrayList<>();
+        for (int index : _indices) {
+            items.add(_items.get(index));
+        }
+        return FXCollections.observableArrayList(items);
+    }
+
+    @Override
+    public void selectIndices(int index, int... indices) {
+        select(index);
+        for (int i : indices) {
+            select(i);
+        }
+    }
+
+    @Override
+    public void selectAll() {
+        for (int i = 0; i < _items.size(); i++) {
+            select(i);
+        }
+    }
+
+    @Override
+    public void selectFirst() {
+        select(0);
+    }
+
+    @Override
+    public void selectLast() {
+        select(_items.size() - 1);
+    }
+
+    @Override
+    public void clearAndSelect(int index) {
+        clearSelection();
+        select(index);
+    }
+
+    @Override
+    public void select(int index) {
+        if (index >= 0 && index < _items.size() && !_indices.contains(index)) {
+            _indices.add(index);
+        }
+        setSelectedIndex(index);
+    }
+
+    @Override
+    public void select(T obj) {
+        select(_items.indexOf(obj));
+    }
+
+    @Override
+    public void clearSelection(int index) {
+        _indices.remove(Integer.valueOf(index));
+    }
+
+    @Override
+    public void clearSelection() {
+        _indices.clear();
+        setSelectedIndex(-1);
+    }
+
+    @Override
+    public boolean isSelected(int index) {
+        return _indices.contains(index);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return _indices.isEmpty();
+    }
+
+    @Override
+    public void selectPrevious() {
+        select(getSelectedIndex() - 1);
+    }
+
+    @Override
+    public void selectNext() {
+        select(getSelectedIndex() + 1);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.gui.main.render;
+
+import com.pavelfatin.sleeparchiver.model.Night;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class MinuteRangeTest {
+    private static Night night(int toBed, int alarm) {
+        return new Night(null, LocalTime.of(alarm, 0), 0, LocalTime.of(toBed, 0), newList(LocalTime.of(3, 0)));
+    }
+
+    private static int minutesOf(int hour, int days) {
+        return (days * 24 + hour) * 60;
+    }
+
+    @Test
+    public void empty() {
+        MinuteRange range = new MinuteRange();
+
+        assertThat(range.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void bounds() {
+        MinuteRange range = new MinuteRange();
+        range.addAll(newList(night(23, 7), night(21, 9), night(22, 6)));
+
+        assertThat(range.isEmpty(), equalTo(false));
+        assertThat(range.getMin(), equalTo(minutesOf(21, 0)));
+        assertThat(range.getMax(), equalTo(minutesOf(9, 1)));
+    }
+
+    @Test
+    public void duplicateExtremes() {
+        Night a = night(21, 9);
+        Night b = night(21, 9);
+        MinuteRange range = new MinuteRange();
+        range.addAll(newList(a, b, night(23, 7)));
+
+        range.remove(a);
+
+        assertThat(range.getMin(), equalTo(minutesOf(21, 0)));
+        assertThat(range.getMax(), equalTo(minutesOf(9, 1)));
+
+        range.remove(b);
+
+        assertThat(range.getMin(), equalTo(minutesOf(23, 0)));
+        assertThat(range.getMax(), equalTo(minutesOf(7, 1)));
+    }
+
+    @Test
+    public void extremeRemoved() {
+        Night earliest = night(20, 7);
+        Night latest = night(23, 11);
+        MinuteRange range = new MinuteRange();
+        range.addAll(newList(earliest, night(22, 8), latest));
+
+        range.remove(earliest);
+
+        assertThat(range.getMin(), equalTo(minutesOf(22, 0)));
+        assertThat(range.getMax(), equalTo(minutesOf(11, 1)));
+
+        range.remove(latest);
+
+        assertThat(range.getMin(), equalTo(minutesOf(22, 0)));
+        assertThat(range.getMax(), equalTo(minutesOf(8, 1)));
+
+        range.removeAll(newList(night(22, 8)));
+
+        assertThat(range.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void incompleteNightsAreIgnored() {
+        Night incomplete = new Night(null, LocalTime.of(12, 0), 0, LocalTime.of(18, 0), newList());
+        MinuteRange range = new MinuteRange();
+
+        range.add(incomplete);
+
+        assertThat(range.isEmpty(), equalTo(true));
+
+        range.add(night(23, 7));
+        range.remove(incomplete);
+
+        assertThat(range.getMin(), equalTo(minutesOf(23, 0)));
+        assertThat(range.getMax(), equalTo(minutesOf(7, 1)));
+    }
+
+    @Test
+    public void removingUnknownNight() {
+        MinuteRange range = new MinuteRange();
+        range.add(night(23, 7));
+
+        range.remove(night(21, 9));
+
+        assertThat(range.getMin(), equalTo(minutesOf(23, 0)));
+        assertThat(range.getMax(), equalTo(minutesOf(7, 1)));
+    }
+
+    @Test
+    public void gridUpdateMatchesReset() {
+        Random random = new Random(7);
+        List<Night> nights = new ArrayList<>();
+        GridTransform updated = new GridTransform("updated", 22, 10, false);
+        GridTransform manual = new GridTransform("manual", 22, 10, true);
+        updated.setNights(nights);
+        manual.setNights(nights);
+
+        for (int i = 0; i < 100; i++) {
+            List<Night> removed = new ArrayList<>();
+            for (int j = random.nextInt(3); j > 0 && !nights.isEmpty(); j--) {
+                removed.add(nights.remove(random.nextInt(nights.size())));
+            }
+            List<Night> added = new ArrayList<>();
+            for (int j = random.nextInt(3); j > 0; j--) {
+                added.add(night(18 + random.nextInt(6), 4 + random.nextInt(10)));
+            }
+            nights.addAll(added);
+            updated.updateNights(removed, added);
+            manual.updateNights(removed, added);
+
+            GridTransform reset = new GridTransform("reset", 22, 10, false);
+            reset.setNights(nights);
+            GridTransform manualReset = new GridTransform("manual reset", 22, 10, true);
+            manualReset.setNights(nights);
+
+            assertThat(updated.getEffectiveStartMinutes(), equalTo(reset.getEffectiveStartMinutes()));
+            assertThat(updated.getEffectiveEndMinutes(), equalTo(reset.getEffectiveEndMinutes()));
+            assertThat(manual.getEffectiveStartMinutes(), equalTo(manualReset.getEffectiveStartMinutes()));
+            assertThat(manual.getEffectiveEndMinutes(), equalTo(manualReset.getEffectiveEndMinutes()));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.contentOf;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.createTempFile;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinaryArchiveTest {
+    private final File _file = createTempFile("archive." + BinaryArchive.EXTENSION);
+
+    private final List<Night> _nights = newList(
+            night(LocalDate.of(2010, 3, 2), "March"),
+            night(null, ""),
+            night(LocalDate.of(2010, 1, 31), "January"),
+            night(LocalDate.of(2010, 2, 1), "February"),
+            Night.restore(LocalDate.of(2010, 2, 14), null, 0, null,
+                    Ease.Unknown, Quality.Unknown, Ease.Unknown, false, "",
+                    new ArrayList<LocalTime>(), new ArrayList<String>()));
+
+
+    private static Night night(LocalDate date, String comments) {
+        return new Night(date, LocalTime.of(7, 15), 30, LocalTime.of(23, 45),
+                Ease.Hard, Quality.Average, Ease.Easy, true, comments,
+                newList(LocalTime.of(0, 30), LocalTime.of(3, 5), LocalTime.of(6, 59)),
+                newList("Coffee", "Sport", "Coffee"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        _file.delete();
+    }
+
+    @Test
+    public void writeAndReadAll() throws IOException {
+        BinaryArchive.write(_file, 1.0F, _nights);
+
+        BinaryArchive archive = BinaryArchive.open(_file);
+        assertThat(archive.size(), equalTo(5));
+        assertThat(archive.readAll(), equalTo(_nights));
+    }
+
+    @Test
+    public void readMonth() throws IOException {
+        BinaryArchive.write(_file, 1.0F, _nights);
+
+        BinaryArchive archive = BinaryArchive.open(_file);
+        assertThat(archive.read(YearMonth.of(2010, 2)), equalTo(newList(_nights.get(3), _nights.get(4))));
+        assertThat(archive.read(YearMonth.of(2010, 1)), equalTo(newList(_nights.get(2))));
+        assertThat(archive.read(YearMonth.of(2010, 4)).size(), equalTo(0));
+    }
+
+    @Test
+    public void readEmpty() throws IOException {
+        BinaryArchive.write(_file, 1.0F, new ArrayList<Night>());
+
+        BinaryArchive archive = BinaryArchive.open(_file);
+        assertThat(archive.readAll().size(), equalTo(0));
+        assertThat(archive.read(YearMonth.of(2010, 1)).size(), equalTo(0));
+    }
+
+    @Test
+    public void conversionIsLossless() throws IOException, XMLStreamException {
+        String xml = contentOf("document/document.xml", "\n");
+        Document document = Document.readFrom(new ByteArrayInputStream(xml.getBytes()));
+
+        document.saveAs(_file, false);
+        Document loaded = Document.load(_file);
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        loaded.writeTo(buffer);
+        assertThat(buffer.toString(), equalTo(xml));
+    }
+
+    @Test
+    public void documentKeepsBinaryFormat() throws IOException {
+        new Document(_nights).saveAs(_file, false);
+
+        assertThat(BinaryArchive.isArchive(_file), equalTo(true));
+        Document document = Document.load(_file);
+        assertThat(document.getNights(), equalTo(_nights));
+
+        document.update(newList(_nights.get(1)), new ArrayList<Night>());
+        document.save(false);
+
+        assertThat(BinaryArchive.isArchive(_file), equalTo(true));
+        assertThat(Document.load(_file).getNights().size(), equalTo(4));
+    }
+
+    @Test
+    public void openReadOnly() throws IOException {
+        new Document(_nights).saveAs(_file, false);
+
+        Document document = Document.open(_file);
+
+        assertThat(document.isReadOnly(), equalTo(true));
+        assertThat(document.getLocation(), equalTo(_file));
+        assertThat(document.getNights(), equalTo(newList(
+                _nights.get(2), _nights.get(3), _nights.get(4), _nights.get(0), _nights.get(1))));
+        assertThat(document.getNights().get(3), equalTo(_nights.get(0)));
+        assertThrows(IllegalStateException.class,
+                () -> document.update(newList(_nights.get(0)), new ArrayList<Night>()));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CsvReaderTest {
+    @Test
+    public void lineTerminators() throws IOException {
+        assertThat(lines("a\nb\r\nc\rd"), equalTo(newList("a", "b", "c", "d")));
+        assertThat(lines("a\n\nb\n"), equalTo(newList("a", "", "b")));
+        assertThat(lines("\r\n"), equalTo(newList("")));
+        assertThat(lines("").size(), equalTo(0));
+    }
+
+    @Test
+    public void lineNumbers() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a\r\n\r\nb"));
+        reader.next();
+        assertThat(reader.getLineNumber(), equalTo(1));
+        reader.next();
+        assertThat(reader.getLineNumber(), equalTo(2));
+        assertThat(reader.isBlank(), equalTo(true));
+        reader.next();
+        assertThat(reader.getLineNumber(), equalTo(3));
+        assertThat(reader.isBlank(), equalTo(false));
+    }
+
+    @Test
+    public void longLines() throws IOException {
+        String line = "x".repeat(20000) + ";" + "y".repeat(20000);
+        CsvReader reader = new CsvReader(new StringReader(line + "\n" + line));
+        reader.next();
+        reader.next();
+        assertThat(reader.size(), equalTo(2));
+        assertThat(reader.getString(1), equalTo("y".repeat(20000)));
+    }
+
+    @Test
+    public void manyColumns() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(";".repeat(99)));
+        reader.next();
+        assertThat(reader.size(), equalTo(100));
+    }
+
+    @Test
+    public void spacesAroundQuotes() {
+        assertThat(Document.split("\"a\"  ;b"), equalTo(newList("a", "b")));
+        assertThat(Document.split(" \"a\";b"), equalTo(newList(" \"a\"", "b")));
+        assertThat(Document.split("a\"b\";c"), equalTo(newList("a\"b\"", "c")));
+    }
+
+    @Test
+    public void escapes() {
+        assertThat(Document.split("a\\\\nb"), equalTo(newList("a\\\nb")));
+        assertThat(Document.split("a\\x\\"), equalTo(newList("a\\x\\")));
+        assertThat(Document.split("\"a\\\"\"r\""), equalTo(newList("a\\\"r")));
+    }
+
+    @Test
+    public void malformed() {
+        assertThrows(IllegalArgumentException.class, () -> Document.split("a;\"b"));
+        assertThrows(IllegalArgumentException.class, () -> Document.split("a;\"b\"c"));
+    }
+
+    @Test
+    public void values() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("2004-02-30;2005-03-04;23:59;24:00;;42;007"));
+        reader.next();
+        assertThat(reader.getDate(0), equalTo(LocalDate.of(2004, 2, 29)));
+        assertThat(reader.getDate(1), equalTo(LocalDate.of(2005, 3, 4)));
+        assertThat(reader.getTime(2), equalTo(LocalTime.of(23, 59)));
+        assertThat(reader.getTime(3), equalTo(LocalTime.of(0, 0)));
+        assertThat(reader.getDate(4), nullValue());
+        assertThat(reader.getTime(4), nullValue());
+        assertThat(reader.getInt(5), equalTo(42));
+        assertThat(reader.getInt(6), equalTo(7));
+    }
+
+    @Test
+    public void malformedValues() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("2005-13-01;2005-1-1;25:00;7:30;x"));
+        reader.next();
+        assertThrows(DateTimeParseException.class, () -> reader.getDate(0));
+        assertThrows(DateTimeParseException.class, () -> reader.getDate(1));
+        assertThrows(DateTimeParseException.class, () -> reader.getTime(2));
+        assertThrows(DateTimeParseException.class, () -> reader.getTime(3));
+        assertThrows(NumberFormatException.class, () -> reader.getInt(4));
+    }
+
+    private static List<String> lines(String s) throws IOException {
+        List<String> lines = new ArrayList<>();
+        CsvReader reader = new CsvReader(new StringReader(s));
+        while (reader.next()) {
+            lines.add(reader.size() == 0 ? "" : reader.getString(0));
+        }
+        return lines;
+    }
+}
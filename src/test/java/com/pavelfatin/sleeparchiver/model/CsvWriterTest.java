@@ -0,0 +1,106 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CsvWriterTest {
+    private static final CSVFormat CSV_FORMAT = CSVFormat.Builder.create()
+            .setDelimiter(';')
+            .setQuote('"')
+            .build();
+
+    private static final String ALPHABET = "ab \t\r\n\"';#!$,\\xé";
+
+    @Test
+    public void sameAsCommonsCsv() throws IOException {
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            List<String> columns = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            for (int j = 0; j < count; j++) {
+                StringBuilder builder = new StringBuilder();
+                int length = random.nextInt(5);
+                for (int k = 0; k < length; k++) {
+                    builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                }
+                columns.add(builder.toString());
+            }
+            assertThat(columns.toString(), Document.join(columns), equalTo(formerJoin(columns)));
+        }
+    }
+
+    @Test
+    public void readBack() throws IOException {
+        List<String> columns = List.of("", " a ", "\"b\"", "c;d", "e\r\nf", "#");
+        StringWriter buffer = new StringWriter();
+        CsvWriter writer = new CsvWriter(buffer, "\n");
+        for (String column : columns) {
+            writer.write(column);
+        }
+        writer.endRecord();
+
+        CsvReader reader = new CsvReader(new StringReader(buffer.toString()));
+        reader.next();
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < reader.size(); i++) {
+            result.add(reader.getString(i));
+        }
+        assertThat(result, equalTo(columns));
+    }
+
+    @Test
+    public void values() throws IOException {
+        StringWriter buffer = new StringWriter();
+        CsvWriter writer = new CsvWriter(buffer, "\n");
+        writer.writeDate(LocalDate.of(987, 6, 5));
+        writer.writeDate(null);
+        writer.writeTime(LocalTime.of(7, 5));
+        writer.writeTime(null);
+        writer.writeInt(-20);
+        writer.endRecord();
+        writer.writeDate(null);
+        writer.writeDate(LocalDate.of(12345, 1, 1));
+        writer.endRecord();
+
+        assertThat(buffer.toString(), equalTo("0987-06-05;;07:05;;-20\n\"\";+12345-01-01\n"));
+    }
+
+    private static String formerJoin(List<String> columns) throws IOException {
+        StringWriter buffer = new StringWriter();
+        try (CSVPrinter printer = new CSVPrinter(buffer, CSV_FORMAT)) {
+            printer.printRecord(columns);
+        }
+        return buffer.toString().trim().replaceAll("\r", "\\\\r").replaceAll("\n", "\\\\n");
+    }
+}
@@ -27,6 +27,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.Test;
 
 import jakarta.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -65,6 +66,12 @@ public class DocumentTest {
         assertThat(buffer.toString(), equalTo(contentOf("document/document.xml", "\n")));
     }
 
+    @Test
+    public void saveToStreamRepeatedly() throws JAXBException {
+        testSaveToStream();
+        testSaveToStream();
+    }
+
     @Test
     public void loadFromStream() throws JAXBException {
         Document document = doLoad("document/document.xml");
@@ -118,10 +125,80 @@ public class DocumentTest {
         assertThrows(JAXBException.class, () -> doLoad("document/malformedNamespace.xml"));
     }
 
+    @Test
+    public void loadFromStreamAfterMalformed() throws JAXBException {
+        assertThrows(JAXBException.class, () -> doLoad("document/malformedElement.xml"));
+        Document document = doLoad("document/document.xml");
+        assertThat(document.getNights(), equalTo(_nights));
+    }
+
     private Document doLoad(String file) throws JAXBException {
         return Document.loadFrom(new ByteArrayInputStream(contentOf(file, "\n").getBytes()));
     }
 
+    @Test
+    public void writeToStream() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new Document(_nights).writeTo(buffer);
+        assertThat(buffer.toString(), equalTo(contentOf("document/document.xml", "\n")));
+    }
+
+    @Test
+    public void writeToStreamMatchesMarshaller() throws IOException, JAXBException {
+        List<Night> nights = newList(EMPTY_NIGHT,
+                Night.restore(LocalDate.of(2010, 1, 2), null, 0, LocalTime.of(23, 0),
+                        Ease.Unknown, Quality.Bad, Ease.Unknown, false, "",
+                        newList(LocalTime.of(1, 2)), new ArrayList<String>()),
+                new Night(LocalDate.of(2010, 1, 3), LocalTime.of(7, 0), 90, null,
+                        Ease.Easy, Quality.Average, Ease.Hard, true, "a&b<c>d\"e'f\nnew\rline\tЖ",
+                        new ArrayList<LocalTime>(), newList("x&y<z>\"'", "a\rb\nc")));
+
+        assertWrittenAsMarshalled(new Document(nights));
+        assertWrittenAsMarshalled(new Document());
+    }
+
+    private void assertWrittenAsMarshalled(Document document) throws IOException, JAXBException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        document.saveTo(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        document.writeTo(actual);
+        assertThat(actual.toString("UTF-8"), equalTo(expected.toString("UTF-8")));
+    }
+
+    @Test
+    public void readFromStream() throws XMLStreamException {
+        assertThat(doRead("document/document.xml").getNights(), equalTo(_nights));
+        assertThat(doRead("document/optional.xml").getNights().get(0), equalTo(EMPTY_NIGHT));
+    }
+
+    @Test
+    public void writeAndReadStream() throws IOException, XMLStreamException {
+        List<Night> nights = newList(
+                Night.restore(null, null, 0, null, Ease.Unknown, Quality.Unknown, Ease.Unknown,
+                        false, "", new ArrayList<LocalTime>(), new ArrayList<String>()),
+                new Night(LocalDate.of(2010, 1, 3), LocalTime.of(7, 0), 90, null,
+                        Ease.Easy, Quality.Average, Ease.Hard, true, "a&b<c>d\"e'f\nnew\rline",
+                        new ArrayList<LocalTime>(), newList("x&y<z>\"'", "a\rb\nc\td")));
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        new Document(nights).writeTo(buffer);
+        Document document = Document.readFrom(new ByteArrayInputStream(buffer.toByteArray()));
+
+        assertThat(document.getNights(), equalTo(nights));
+    }
+
+    @Test
+    public void readFromMalformedStream() {
+        for (String file : newList("malformedDate", "malformedTime", "malformedEnum", "malformedInteger",
+                "malformedBoolean", "malformedElement", "malformedAttribute", "malformedNamespace")) {
+            assertThrows(XMLStreamException.class, () -> doRead("document/" + file + ".xml"), file);
+        }
+    }
+
+    private Document doRead(String file) throws XMLStreamException {
+        return Document.readFrom(new ByteArrayInputStream(contentOf(file, "\n").getBytes()));
+    }
+
     @Test
     public void saveAndLoadFile() throws IOException {
         Document document = new Document(_nights);
@@ -241,6 +318,21 @@ public class DocumentTest {
         assertThat(nights.get(2).getToBed(), equalTo(LocalTime.of(1, 0)));
     }
 
+    @Test
+    public void importMalformedDataFromStream() {
+        String content = "2005-02-04;08:45;30;22:15;hard;good;normal;true;\r\n\r\n2006-03-05;9:55;20;23:15;;;hard;false;";
+        ImportException e = assertThrows(ImportException.class,
+                () -> Document.importDataFrom(new StringReader(content)));
+        assertThat(e.getLine(), equalTo(3));
+    }
+
+    @Test
+    public void importTruncatedDataFromStream() {
+        ImportException e = assertThrows(ImportException.class,
+                () -> Document.importDataFrom(new StringReader("2005-02-04;08:45;30")));
+        assertThat(e.getLine(), equalTo(1));
+    }
+
     private List<Night> readDataAsStream(String file) throws IOException {
         String content = contentOf(file, "\r\n");
         ByteArrayInputStream buffer = new ByteArrayInputStream(content.getBytes());
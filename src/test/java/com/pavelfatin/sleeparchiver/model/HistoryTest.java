@@ -0,0 +1,259 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.createTempFile;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.night;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class HistoryTest {
+    private final File _archive = createTempFile("history.tmp");
+    private final File _copy = createTempFile("history-copy.tmp");
+
+    private final Night _a = night(2001, 1);
+    private final Night _b = night(2002, 2);
+    private final Night _c = night(2003, 3);
+
+    @AfterEach
+    public void tearDown() {
+        History.fileOf(_archive).delete();
+        History.fileOf(_copy).delete();
+    }
+
+    @Test
+    public void empty() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+
+        assertThat(history.size(), equalTo(0));
+        assertThat(history.isUndoAvailable(), equalTo(false));
+        assertThat(history.getFile().exists(), equalTo(false));
+    }
+
+    @Test
+    public void undoAndRedo() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+        history.append("first", newList(), newList(_b));
+        history.append("second", newList(_a), newList(_c));
+
+        assertThat(history.getUndoName(), equalTo("second"));
+
+        History.Step step = history.undo();
+
+        assertThat(step, equalTo(new History.Step("second", newList(_a), newList(_c))));
+        assertThat(history.getPosition(), equalTo(1));
+        assertThat(history.getRedoName(), equalTo("second"));
+        assertThat(history.redo(), equalTo(step));
+        assertThat(history.getRedoCount(), equalTo(0));
+    }
+
+    @Test
+    public void reopen() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+        history.append("first", newList(), newList(_b));
+        history.append("second", newList(_a), newList(_c));
+        history.undo();
+
+        History reopened = History.open(_archive, newList(_a, _b), 10);
+
+        assertThat(reopened.size(), equalTo(2));
+        assertThat(reopened.getPosition(), equalTo(1));
+        assertThat(reopened.getUndoName(), equalTo("first"));
+        assertThat(reopened.getRedoName(), equalTo("second"));
+        assertThat(reopened.undo(), equalTo(new History.Step("first", newList(), newList(_b))));
+    }
+
+    @Test
+    public void writesInBackground() throws IOException, InterruptedException {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        History history = History.open(_archive, newList(_a), 10, writer);
+        history.append("first", newList(), newList(_b));
+        history.append("second", newList(_a), newList(_c));
+
+        assertThat(history.undo(), equalTo(new History.Step("second", newList(_a), newList(_c))));
+
+        writer.shutdown();
+        writer.awaitTermination(10, TimeUnit.SECONDS);
+
+        History reopened = History.open(_archive, newList(_a, _b), 10);
+
+        assertThat(reopened.size(), equalTo(2));
+        assertThat(reopened.getPosition(), equalTo(1));
+    }
+
+    @Test
+    public void backgroundFailureIsReported() throws IOException {
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try {
+            History history = History.open(_archive, newList(_a), 10, writer);
+            assertThat(history.getFile().mkdir(), equalTo(true));
+            history.append("first", newList(), newList(_b));
+
+            assertThrows(IOException.class, history::undo);
+            assertThrows(IOException.class, () -> history.append("second", newList(_b), newList(_c)));
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    public void mismatchStartsAnew() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+        history.append("first", newList(), newList(_b));
+
+        History reopened = History.open(_archive, newList(_a, _c), 10);
+
+        assertThat(reopened.size(), equalTo(0));
+        assertThat(History.open(_archive, newList(_a, _b), 10).size(), equalTo(0));
+    }
+
+    @Test
+    public void checksumSurvivesEncoding() throws IOException {
+        Night night = new Night(LocalDate.of(2005, 5, 5), null, 0, null, new ArrayList<>())
+                .with(newList("A condition seen for the first time"));
+        long checksum = NightCodec.checksumOf(newList(night));
+
+        Night decoded = roundTrip(night);
+
+        assertThat(NightCodec.checksumOf(newList(decoded)), equalTo(checksum));
+    }
+
+    @Test
+    public void appendDropsRedo() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+        history.append("first", newList(), newList(_b));
+        history.append("second", newList(), newList(_c));
+        history.undo();
+        history.undo();
+
+        history.append("third", newList(_a), newList());
+
+        assertThat(history.size(), equalTo(1));
+        assertThat(history.getRedoCount(), equalTo(0));
+        History reopened = History.open(_archive, new ArrayList<>(), 10);
+        assertThat(reopened.size(), equalTo(1));
+        assertThat(reopened.undo(), equalTo(new History.Step("third", newList(_a), newList())));
+    }
+
+    @Test
+    public void moveOutside() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+        history.append("first", newList(), newList(_b));
+
+        assertThat(history.move(-1, newList(_a)), equalTo(true));
+        assertThat(history.move(-1, new ArrayList<>()), equalTo(false));
+        assertThat(history.size(), equalTo(0));
+        assertThat(History.open(_archive, new ArrayList<>(), 10).size(), equalTo(0));
+    }
+
+    @Test
+    public void tornStepIsDropped() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+        history.append("first", newList(), newList(_b));
+        history.append("second", newList(), newList(_c));
+        history.undo();
+
+        try (RandomAccessFile file = new RandomAccessFile(history.getFile(), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        History reopened = History.open(_archive, newList(_a, _b), 10);
+        assertThat(reopened.size(), equalTo(1));
+        assertThat(reopened.getPosition(), equalTo(1));
+    }
+
+    @Test
+    public void corruptLengthIsDropped() throws IOException {
+        for (int length : new int[] {-4, 0, 13, 14}) {
+            History.fileOf(_archive).delete();
+            History history = History.open(_archive, newList(_a), 10);
+            history.append("first", newList(), newList(_b));
+            long offset = history.getFile().length();
+            history.append("second", newList(), newList(_c));
+            history.undo();
+
+            try (RandomAccessFile file = new RandomAccessFile(history.getFile(), "rw")) {
+                file.seek(offset);
+                file.writeInt(length);
+            }
+
+            History reopened = History.open(_archive, newList(_a, _b), 10);
+
+            assertThat(reopened.size(), equalTo(1));
+            assertThat(reopened.getPosition(), equalTo(1));
+            assertThat(reopened.getFile().length(), equalTo(offset));
+        }
+    }
+
+    @Test
+    public void limit() throws IOException {
+        List<Night> nights = new ArrayList<>();
+        History history = History.open(_archive, nights, 4);
+        for (int i = 1; i <= 12; i++) {
+            Night night = night(2000 + i, 1);
+            history.append("step " + i, newList(), newList(night));
+            nights.add(night);
+        }
+
+        assertThat(history.size() <= 5, equalTo(true));
+
+        History reopened = History.open(_archive, nights, 4);
+        assertThat(reopened.size(), equalTo(history.size()));
+        assertThat(reopened.getUndoName(), equalTo("step 12"));
+        assertThat(reopened.undo(), equalTo(new History.Step("step 12", newList(), newList(night(2012, 1)))));
+    }
+
+    @Test
+    public void copy() throws IOException {
+        History history = History.open(_archive, newList(_a), 10);
+        history.append("first", newList(), newList(_b));
+
+        History copy = history.copyTo(_copy);
+
+        assertThat(copy.getFile(), equalTo(History.fileOf(_copy)));
+        assertThat(copy.size(), equalTo(1));
+        assertThat(copy.undo(), equalTo(new History.Step("first", newList(), newList(_b))));
+        assertThat(history.size(), equalTo(1));
+    }
+
+    private static Night roundTrip(Night night) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        NightCodec.write(new DataOutputStream(buffer), night);
+        return NightCodec.read(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.createTempFile;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.night;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class JournalTest {
+    private final File _file = createTempFile("journal.tmp");
+
+    private final Night _a = night(2001, 1);
+    private final Night _b = night(2002, 2);
+    private final Night _c = night(2003, 3);
+
+    @AfterEach
+    public void tearDown() {
+        _file.delete();
+        Journal.fileOf(_file).delete();
+        Journal.staleFileOf(_file).delete();
+    }
+
+    @Test
+    public void updateAppendsToJournal() throws IOException {
+        Document document = createDocument(_a, _c);
+        long archiveLength = _file.length();
+
+        document.update(newList(_a), newList(_b));
+
+        assertThat(document.getNights(), equalTo(newList(_b, _c)));
+        assertThat(document.getJournalSize(), equalTo(2));
+        assertThat(_file.length(), equalTo(archiveLength));
+    }
+
+    @Test
+    public void loadReplaysJournal() throws IOException {
+        Document document = createDocument(_a, _c);
+        document.update(newList(_a), newList(_b));
+        document.update(new ArrayList<Night>(), newList(_a));
+
+        Document loaded = Document.load(_file);
+
+        assertThat(loaded.getNights(), equalTo(newList(_a, _b, _c)));
+        assertThat(loaded.getJournalSize(), equalTo(3));
+    }
+
+    @Test
+    public void unchangedNightsAreNotJournaled() throws IOException {
+        Document document = createDocument(_a, _b);
+
+        document.update(newList(_a, _b), newList(_a, _b));
+
+        assertThat(document.getJournalSize(), equalTo(0));
+        assertThat(Journal.fileOf(_file).exists(), equalTo(false));
+    }
+
+    @Test
+    public void saveCompactsJournal() throws IOException {
+        Document document = createDocument(_a);
+        document.update(new ArrayList<Night>(), newList(_b));
+
+        document.save(false);
+
+        assertThat(document.getJournalSize(), equalTo(0));
+        assertThat(Journal.fileOf(_file).exists(), equalTo(false));
+        assertThat(Document.load(_file).getNights(), equalTo(newList(_a, _b)));
+    }
+
+    @Test
+    public void staleJournalIsIgnored() throws IOException {
+        Document document = createDocument(_a);
+        document.update(new ArrayList<Night>(), newList(_b));
+
+        File journal = Journal.fileOf(_file);
+        byte[] content = Files.readAllBytes(journal.toPath());
+        document.save(false);
+        // As if compaction was interrupted before the journal was deleted
+        Files.write(journal.toPath(), content);
+
+        Document loaded = Document.load(_file);
+
+        assertThat(loaded.getNights(), equalTo(newList(_a, _b)));
+        assertThat(loaded.getJournalSize(), equalTo(0));
+        assertThat(journal.exists(), equalTo(false));
+        assertThat(Files.readAllBytes(Journal.staleFileOf(_file).toPath()), equalTo(content));
+    }
+
+    @Test
+    public void copiedArchiveKeepsJournal() throws IOException {
+        Document document = createDocument(_a);
+        document.update(new ArrayList<Night>(), newList(_b));
+
+        // As if the archive was restored by a tool that doesn't keep the modification time
+        assertThat(_file.setLastModified(_file.lastModified() - 60_000), equalTo(true));
+
+        Document loaded = Document.load(_file);
+
+        assertThat(loaded.getNights(), equalTo(newList(_a, _b)));
+        assertThat(loaded.getJournalSize(), equalTo(1));
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        Document document = createDocument(_a);
+        document.update(new ArrayList<Night>(), newList(_b));
+        document.update(new ArrayList<Night>(), newList(_c));
+
+        File journal = Journal.fileOf(_file);
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+
+        Document loaded = Document.load(_file);
+
+        assertThat(loaded.getNights(), equalTo(newList(_a, _b)));
+        assertThat(loaded.getJournalSize(), equalTo(1));
+
+        loaded.update(new ArrayList<Night>(), newList(_c));
+        assertThat(Document.load(_file).getNights(), equalTo(newList(_a, _b, _c)));
+    }
+
+    private Document createDocument(Night... nights) throws IOException {
+        List<Night> list = newList(nights);
+        Collections.sort(list, Night.getComparator());
+        Document document = new Document(list);
+        document.saveAs(_file, false);
+        return document;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class MetricsTest {
+    @Test
+    public void simple() {
+        Metrics metrics = metrics(time(23, 0), time(7, 0), time(2, 0), time(4, 30));
+
+        assertThat(metrics.getBreaksCount(), equalTo(2));
+        assertThat(metrics.getDuration(), equalTo(480));
+        assertThat(metrics.getAverage(), equalTo(240));
+        assertThat(metrics.getDeepSleepMinutes(), equalTo(480));
+        assertThat(metrics.getFirstInstant(), equalTo(new SleepInstant(0, time(23, 0))));
+        assertThat(metrics.getLastInstant(), equalTo(new SleepInstant(1, time(7, 0))));
+        assertThat(metrics.getSpansCount(), equalTo(3));
+    }
+
+    @Test
+    public void morningToBed() {
+        Metrics metrics = metrics(time(1, 0), time(9, 0), time(5, 0));
+
+        assertThat(metrics.getFirstInstant(), equalTo(new SleepInstant(1, time(1, 0))));
+        assertThat(metrics.getLastInstant(), equalTo(new SleepInstant(1, time(9, 0))));
+    }
+
+    @Test
+    public void shortTrailingSpans() {
+        Metrics metrics = metrics(time(23, 0), time(7, 0), time(6, 30), time(6, 40), time(6, 50));
+
+        assertThat(metrics.getDuration(), equalTo(450));
+    }
+
+    @Test
+    public void allSpansShort() {
+        Metrics metrics = metrics(time(23, 0), time(23, 20), time(23, 5), time(23, 10));
+
+        assertThat(metrics.getDuration(), equalTo(10));
+    }
+
+    @Test
+    public void sameAsInstantsAndSpans() {
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            LocalTime toBed = time(random.nextInt(24), random.nextInt(60));
+            LocalTime alarm = time(random.nextInt(24), random.nextInt(60));
+            List<LocalTime> moments = new ArrayList<>();
+            for (int j = 1 + random.nextInt(12); j > 0; j--) {
+                moments.add(time(random.nextInt(24), random.nextInt(60)));
+            }
+            moments.sort(null);
+            Night night = new Night(null, alarm, 0, toBed, moments);
+
+            assertSameAsReference(night.getMetrics(), night.getCompleteMinutes());
+        }
+    }
+
+    private static void assertSameAsReference(Metrics metrics, int[] minutes) {
+        List<LocalTime> moments = new ArrayList<>();
+        for (int minute : minutes) {
+            moments.add(time(minute / 60, minute % 60));
+        }
+        List<SleepInstant> instants = SleepInstant.toInstants(moments);
+        List<SleepSpan> spans = SleepSpan.toSpans(instants);
+
+        int deepSleep = 0;
+        SleepInstant wakeUp = spans.getLast().begin();
+        for (SleepSpan span : spans) {
+            if (span.toMinutes() > 45) {
+                deepSleep += span.toMinutes();
+            }
+            if (span.toMinutes() >= 15) {
+                wakeUp = span.end();
+            }
+        }
+
+        assertThat(metrics.getInstants(), equalTo(instants));
+        assertThat(metrics.getSpans(), equalTo(spans));
+        assertThat(metrics.getBreaksCount(), equalTo(moments.size() - 2));
+        assertThat(metrics.getDeepSleepMinutes(), equalTo(deepSleep));
+        assertThat(metrics.getDuration(), equalTo(new SleepSpan(spans.getFirst().begin(), wakeUp).toMinutes()));
+        assertThat(metrics.getTotalSpan(), equalTo(new SleepSpan(instants.getFirst(), instants.getLast())));
+    }
+
+    private static Metrics metrics(LocalTime toBed, LocalTime alarm, LocalTime... moments) {
+        return new Night(null, alarm, 0, toBed, newList(moments)).getMetrics();
+    }
+
+    private static LocalTime time(int hours, int minutes) {
+        return LocalTime.of(hours, minutes);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.night;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.randomNights;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class NightIndexTest {
+    private static final LocalDate START = LocalDate.of(2009, 1, 1);
+
+    @Test
+    public void empty() {
+        NightIndex index = new NightIndex();
+
+        assertThat(index.isEmpty(), equalTo(true));
+        assertThat(index.getLastDate(), nullValue());
+        assertThat(index.month(YearMonth.from(START)), equalTo(newList()));
+        assertThat(index.lastDays(7), equalTo(newList()));
+    }
+
+    @Test
+    public void order() {
+        List<Night> nights = randomNights(START, 100, new Random(1));
+
+        NightIndex index = NightIndex.of(nights);
+
+        nights.sort(Night.getComparator());
+        assertThat(index.getNights(), equalTo(nights));
+    }
+
+    @Test
+    public void month() {
+        List<Night> nights = randomNights(START, 300, new Random(2));
+        NightIndex index = NightIndex.of(nights);
+
+        for (YearMonth month = YearMonth.from(START).minusMonths(1);
+             month.isBefore(YearMonth.from(START).plusMonths(6)); month = month.plusMonths(1)) {
+            List<Night> expected = new ArrayList<>();
+            for (Night night : index.getNights()) {
+                if (night.getDate() != null && YearMonth.from(night.getDate()).equals(month)) {
+                    expected.add(night);
+                }
+            }
+            assertThat(index.month(month), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void lastDays() {
+        Night undated = night(null);
+        NightIndex index = NightIndex.of(newList(night(START.plusDays(9)), undated,
+                night(START), night(START.plusDays(5)), night(START.plusDays(7))));
+
+        assertThat(index.getLastDate(), equalTo(START.plusDays(9)));
+        assertThat(index.lastDays(1), equalTo(newList(night(START.plusDays(9)), undated)));
+        assertThat(index.lastDays(3), equalTo(newList(night(START.plusDays(7)), night(START.plusDays(9)), undated)));
+        assertThat(index.lastDays(100).size(), equalTo(5));
+    }
+
+    @Test
+    public void updateInPlace() {
+        checkUpdate(1000, 10, new Random(3));
+    }
+
+    @Test
+    public void updateByMerge() {
+        checkUpdate(100, 50, new Random(4));
+    }
+
+    @Test
+    public void removeDuplicateOnce() {
+        NightIndex index = NightIndex.of(newList(night(START), night(START), night(START.plusDays(1))));
+
+        List<Night> removed = index.update(newList(night(START), night(START.plusDays(2))), newList());
+
+        assertThat(removed, equalTo(newList(night(START))));
+        assertThat(index.getNights(), equalTo(newList(night(START), night(START.plusDays(1)))));
+    }
+
+    private static void checkUpdate(int size, int changes, Random random) {
+        List<Night> nights = randomNights(START, size, random);
+        NightIndex index = NightIndex.of(nights);
+
+        List<Night> removed = new ArrayList<>(nights.subList(0, changes));
+        List<Night> added = randomNights(START, changes, random);
+        List<Night> actuallyRemoved = index.update(removed, added);
+
+        List<Night> expected = new ArrayList<>(nights.subList(changes, nights.size()));
+        expected.addAll(added);
+        expected.sort(Night.getComparator());
+        assertThat(index.getNights(), equalTo(expected));
+        assertThat(actuallyRemoved.size(), equalTo(changes));
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.night;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.randomNights;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class NightStoreTest {
+    private static final LocalDate START = LocalDate.of(2009, 1, 1);
+
+    @Test
+    public void empty() {
+        NightStore store = new NightStore(new ArrayList<>());
+
+        assertThat(store.size(), equalTo(0));
+        assertThat(store.summarize(START, START.plusYears(1)), equalTo(NightStore.Summary.EMPTY));
+    }
+
+    @Test
+    public void order() {
+        List<Night> nights = randomNights(START, 100, new Random(1));
+        Collections.shuffle(nights, new Random(2));
+
+        NightStore store = new NightStore(nights);
+
+        nights.sort(Night.getComparator());
+        assertThat(rows(store), equalTo(rowsOf(nights)));
+    }
+
+    @Test
+    public void summarize() {
+        List<Night> nights = randomNights(START, 200, new Random(3));
+        NightStore store = new NightStore(nights);
+
+        LocalDate from = START.plusDays(20);
+        LocalDate to = START.plusDays(90);
+
+        assertThat(store.summarize(from, to), equalTo(summarize(nights, from, to)));
+        assertThat(store.summarize(START, START.plusYears(10)), equalTo(summarize(nights, START, START.plusYears(10))));
+    }
+
+    @Test
+    public void rowOf() {
+        List<Night> nights = newList(night(START.plusDays(2)), night(null), night(START), night(START.plusDays(2)));
+        NightStore store = new NightStore(nights);
+
+        assertThat(store.rowOf(START.minusDays(1)), equalTo(0));
+        assertThat(store.rowOf(START), equalTo(0));
+        assertThat(store.rowOf(START.plusDays(1)), equalTo(1));
+        assertThat(store.rowOf(START.plusDays(2)), equalTo(1));
+        assertThat(store.rowOf(START.plusDays(3)), equalTo(3));
+    }
+
+    @Test
+    public void count() {
+        List<Night> nights = newList(
+                night(START).with(newList("coffee", "tea")),
+                night(START.plusDays(1)).with(newList("tea")),
+                night(START.plusDays(2)));
+        NightStore store = new NightStore(nights);
+
+        assertThat(store.count("tea", 0, 3), equalTo(2));
+        assertThat(store.count("coffee", 0, 3), equalTo(1));
+        assertThat(store.count("coffee", 1, 3), equalTo(0));
+        assertThat(store.count("unknown condition", 0, 3), equalTo(0));
+    }
+
+    @Test
+    public void countDoesNotAddNames() {
+        NightStore store = new NightStore(newList(night(START).with(newList("tea"))));
+
+        assertThat(store.count("never recorded condition", 0, 1), equalTo(0));
+        assertThat(Conditions.find("never recorded condition"), equalTo(-1));
+        assertThat(Conditions.find("tea"), equalTo(Conditions.idOf("tea")));
+    }
+
+    @Test
+    public void manyConditions() {
+        List<String> conditions = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            conditions.add("condition " + i);
+        }
+        NightStore store = new NightStore(newList(night(START).with(newList("condition 0"))));
+
+        store.update(newList(), newList(night(START.plusDays(1)).with(conditions)));
+
+        assertThat(store.count("condition 0", 0, 2), equalTo(2));
+        assertThat(store.count("condition 149", 0, 2), equalTo(1));
+    }
+
+    @Test
+    public void update() {
+        Random random = new Random(4);
+        List<Night> nights = randomNights(START, 100, random);
+        NightStore store = new NightStore(nights);
+
+        for (int i = 0; i < 50; i++) {
+            List<Night> removed = new ArrayList<>();
+            for (int j = random.nextInt(3); j > 0 && !nights.isEmpty(); j--) {
+                removed.add(nights.remove(random.nextInt(nights.size())));
+            }
+            List<Night> added = randomNights(START, random.nextInt(3), random);
+            nights.addAll(added);
+
+            store.update(removed, added);
+        }
+
+        NightStore rebuilt = new NightStore(nights);
+        assertThat(rows(store), equalTo(rows(rebuilt)));
+        assertThat(store.summarize(0, store.size()), equalTo(rebuilt.summarize(0, rebuilt.size())));
+    }
+
+    @Test
+    public void updateMatchesColumns() {
+        Night night = night(START);
+        NightStore store = new NightStore(newList(night));
+
+        store.update(newList(night.with(newList("tea"))), newList());
+
+        assertThat(store.size(), equalTo(1));
+
+        Night copy = new Night(START, night.getAlarm(), night.getWindow(), night.getToBed(),
+                night.getEaseOfFallingAsleep(), night.getQualityOfSleep(), night.getEaseOfWakingUp(),
+                night.isAlarmWorked(), "Another comment", night.getMoments(), night.getConditions());
+        store.update(newList(copy), newList());
+
+        assertThat(store.size(), equalTo(0));
+    }
+
+    @Test
+    public void updateDuplicates() {
+        Night night = night(START);
+        NightStore store = new NightStore(newList(night, night(START), night(START)));
+
+        store.update(newList(night), newList());
+
+        assertThat(store.size(), equalTo(2));
+    }
+
+    private static List<Row> rows(NightStore store) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < store.size(); i++) {
+            rows.add(new Row(store.getDate(i), store.summarize(i, i + 1)));
+        }
+        return rows;
+    }
+
+    private static List<Row> rowsOf(List<Night> nights) {
+        List<Row> rows = new ArrayList<>();
+        for (Night night : nights) {
+            rows.addAll(rows(new NightStore(newList(night))));
+        }
+        return rows;
+    }
+
+    private record Row(LocalDate date, NightStore.Summary summary) {
+    }
+
+    private static NightStore.Summary summarize(List<Night> nights, LocalDate from, LocalDate to) {
+        int count = 0;
+        int complete = 0;
+        long duration = 0;
+        long breaks = 0;
+        long deepSleep = 0;
+        int alarms = 0;
+        int alarmsWorked = 0;
+        for (Night night : nights) {
+            LocalDate date = night.getDate();
+            if (date == null || date.isBefore(from) || !date.isBefore(to)) {
+                continue;
+            }
+            count++;
+            if (night.getAlarm() != null) {
+                alarms++;
+                if (night.isAlarmWorked()) {
+                    alarmsWorked++;
+                }
+            }
+            if (night.isComplete()) {
+                Metrics metrics = night.getMetrics();
+                complete++;
+                duration += metrics.getDuration();
+                breaks += metrics.getBreaksCount();
+                deepSleep += metrics.getDeepSleepMinutes();
+            }
+        }
+        return new NightStore.Summary(count, complete, duration, breaks, deepSleep, alarms, alarmsWorked);
+    }
+}
@@ -83,4 +83,68 @@ public class NightTest {
         assertThat(night.hasConditions(), equalTo(true));
         assertThat(night.getConditionsCount(), equalTo(2));
     }
+
+    @Test
+    public void timesToTheMinute() {
+        Night night = new Night(null, LocalTime.of(7, 30, 59), 0, LocalTime.of(23, 15, 1),
+                Utilities.newList(LocalTime.of(1, 2, 3)));
+
+        assertThat(night.getAlarm(), equalTo(LocalTime.of(7, 30)));
+        assertThat(night.getToBed(), equalTo(LocalTime.of(23, 15)));
+        assertThat(night.getMoments(), equalTo(Utilities.newList(LocalTime.of(1, 2))));
+    }
+
+    @Test
+    public void sharedConditions() {
+        Night a = new Night(null, null, 0, null, Ease.Unknown, Quality.Unknown, Ease.Unknown, false, "",
+                new ArrayList<LocalTime>(), Utilities.newList(new String("Coffee"), "Tea"));
+        Night b = new Night(null, null, 0, null, Ease.Unknown, Quality.Unknown, Ease.Unknown, false, "",
+                new ArrayList<LocalTime>(), Utilities.newList(new String("Coffee")));
+
+        assertThat(a.getConditions(), equalTo(Utilities.newList("Coffee", "Tea")));
+        assertThat(a.getConditions().get(0) == b.getConditions().get(0), equalTo(true));
+    }
+
+    @Test
+    public void withConditions() {
+        Night night = Night.restore(LocalDate.of(2001, 1, 1), LocalTime.of(7, 0), 20, LocalTime.of(23, 0),
+                Ease.Easy, Quality.Good, Ease.Hard, false, "",
+                Utilities.newList(LocalTime.of(1, 0)), Utilities.newList("A"));
+
+        Night result = night.with(Utilities.newList("B", "C"));
+
+        assertThat(result.getConditions(), equalTo(Utilities.newList("B", "C")));
+        assertThat(result.getMoments(), equalTo(night.getMoments()));
+        assertThat(result.getRawAlarmWorked(), equalTo(null));
+        assertThat(result.getRawComments(), equalTo(null));
+        assertThat(night.getConditions(), equalTo(Utilities.newList("A")));
+    }
+
+    @Test
+    public void cachedHash() {
+        Night a = new Night(LocalDate.of(2001, 1, 1), LocalTime.of(7, 0), 20, LocalTime.of(23, 0),
+                Utilities.newList(LocalTime.of(1, 0)));
+        Night b = new Night(LocalDate.of(2001, 1, 1), LocalTime.of(7, 0), 20, LocalTime.of(23, 0),
+                Utilities.newList(LocalTime.of(1, 0)));
+        Night c = new Night(LocalDate.of(2001, 1, 1), LocalTime.of(7, 0), 20, LocalTime.of(23, 0),
+                Utilities.newList(LocalTime.of(2, 0)));
+
+        assertThat(a.equals(b), equalTo(true));
+        assertThat(a.hashCode(), equalTo(b.hashCode()));
+        assertThat(a.hashCode(), equalTo(a.hashCode()));
+        assertThat(a.equals(c), equalTo(false));
+        c.hashCode();
+        assertThat(a.equals(c), equalTo(false));
+        assertThat(a.with(Utilities.newList("A")).equals(a.with(Utilities.newList("A"))), equalTo(true));
+    }
+
+    @Test
+    public void rawValues() {
+        Night night = Night.restore(null, null, 0, null, Ease.Unknown, Quality.Unknown, Ease.Unknown,
+                false, null, new ArrayList<LocalTime>(), new ArrayList<String>());
+
+        assertThat(night.getRawAlarmWorked(), equalTo(false));
+        assertThat(night.getRawComments(), equalTo(null));
+        assertThat(night.equals(new Night(null, null, 0, null, new ArrayList<LocalTime>())), equalTo(false));
+    }
 }
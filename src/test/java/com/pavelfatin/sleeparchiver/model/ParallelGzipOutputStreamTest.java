@@ -0,0 +1,115 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ParallelGzipOutputStreamTest {
+    @Test
+    public void empty() throws IOException {
+        assertRoundTrip(new byte[0]);
+    }
+
+    @Test
+    public void singleBlock() throws IOException {
+        assertRoundTrip(text(1000));
+    }
+
+    @Test
+    public void blockBoundary() throws IOException {
+        assertRoundTrip(text(2 * ParallelGzipOutputStream.BLOCK_SIZE));
+    }
+
+    @Test
+    public void manyBlocks() throws IOException {
+        assertRoundTrip(text(20 * ParallelGzipOutputStream.BLOCK_SIZE + 123));
+    }
+
+    @Test
+    public void incompressible() throws IOException {
+        byte[] data = new byte[3 * ParallelGzipOutputStream.BLOCK_SIZE];
+        new Random(1).nextBytes(data);
+        assertRoundTrip(data);
+    }
+
+    @Test
+    public void singleBytes() throws IOException {
+        byte[] data = text(ParallelGzipOutputStream.BLOCK_SIZE + 10);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(buffer)) {
+            for (byte b : data) {
+                out.write(b);
+            }
+        }
+        assertThat(decompress(buffer.toByteArray()), equalTo(data));
+    }
+
+    @Test
+    public void ratioCloseToSequential() throws IOException {
+        byte[] data = text(8 * ParallelGzipOutputStream.BLOCK_SIZE);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(data);
+        }
+        int size = compress(data, new ForkJoinPool(4)).length;
+        assertThat(size < buffer.size() * 101 / 100, equalTo(true));
+    }
+
+    private static void assertRoundTrip(byte[] data) throws IOException {
+        assertThat(decompress(compress(data, new ForkJoinPool(4))), equalTo(data));
+        assertThat(decompress(compress(data, new ForkJoinPool(1))), equalTo(data));
+    }
+
+    private static byte[] compress(byte[] data, ForkJoinPool pool) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(buffer, pool)) {
+            out.write(data);
+        } finally {
+            pool.shutdown();
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] data) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] text(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        int i = 0;
+        while (builder.length() < length) {
+            builder.append("<night date=\"").append(i++ % 10000).append("\"/>\n");
+        }
+        return builder.substring(0, length).getBytes();
+    }
+}
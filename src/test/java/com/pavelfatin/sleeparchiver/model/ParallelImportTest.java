@@ -0,0 +1,130 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static com.pavelfatin.sleeparchiver.model.TestUtilities.createTempFile;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class ParallelImportTest {
+    private final File _file = createTempFile("import.tmp");
+    private final ForkJoinPool _pool = new ForkJoinPool(4);
+
+    @AfterEach
+    public void tearDown() {
+        _file.delete();
+        _pool.shutdown();
+    }
+
+    @Test
+    public void sameAsSequential() throws IOException {
+        String data = data(200);
+        write(data);
+
+        List<Night> nights = ParallelImport.read(_file, StandardCharsets.UTF_8, 100, _pool);
+
+        assertThat(nights.size(), equalTo(200));
+        assertThat(nights, equalTo(Document.importDataFrom(new StringReader(data))));
+    }
+
+    @Test
+    public void mixedLineTerminators() throws IOException {
+        String data = data(50).replace("\n", "\r\n") + "\r\n\n" + data(50);
+        write(data);
+
+        List<Night> nights = ParallelImport.read(_file, StandardCharsets.UTF_8, 64, _pool);
+
+        assertThat(nights, equalTo(Document.importDataFrom(new StringReader(data))));
+    }
+
+    @Test
+    public void singleChunk() throws IOException {
+        String data = data(10);
+        write(data);
+
+        List<Night> nights = ParallelImport.read(_file, StandardCharsets.UTF_8, 1024 * 1024, _pool);
+
+        assertThat(nights, equalTo(Document.importDataFrom(new StringReader(data))));
+    }
+
+    @Test
+    public void empty() throws IOException {
+        write("");
+
+        assertThat(ParallelImport.read(_file, StandardCharsets.UTF_8, 100, _pool).size(), equalTo(0));
+    }
+
+    @Test
+    public void errorLineNumber() throws IOException {
+        String data = data(100) + "\r\n\r\n2006-03-05;9:55;20;23:15;;;hard;false;\n" + data(100);
+        write(data);
+
+        ImportException e = assertThrows(ImportException.class,
+                () -> ParallelImport.read(_file, StandardCharsets.UTF_8, 100, _pool));
+
+        assertThat(e.getLine(), equalTo(103));
+    }
+
+    @Test
+    public void mergeIsStable() {
+        Comparator<String> byLength = Comparator.comparingInt(String::length);
+        List<List<String>> runs = newList(
+                newList("a", "bb", "ccc"),
+                newList("d", "ee"),
+                newList("f", "ggg"));
+
+        List<String> merged = ParallelImport.merge(new ArrayList<>(runs), byLength);
+
+        assertThat(merged, equalTo(newList("a", "d", "f", "bb", "ee", "ccc", "ggg")));
+    }
+
+    private void write(String data) throws IOException {
+        Files.writeString(_file.toPath(), data, StandardCharsets.UTF_8);
+    }
+
+    // Lines of ~60 bytes, in reverse date order, some with the same date
+    private static String data(int count) {
+        StringBuilder builder = new StringBuilder();
+        LocalDate date = LocalDate.of(2000, 1, 1);
+        for (int i = count - 1; i >= 0; i--) {
+            builder.append(date.plusDays(i / 2)).append(';')
+                    .append(LocalTime.of(7, i % 60)).append(";20;")
+                    .append(LocalTime.of(23, i % 60)).append(";easy;good;hard;true;\"Comment; ")
+                    .append(i).append("\";01:00;;Coffee\n");
+        }
+        return builder.toString();
+    }
+}
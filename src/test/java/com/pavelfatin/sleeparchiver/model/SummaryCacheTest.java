@@ -0,0 +1,177 @@
+/*
+ * SleepArchiver - cross-platform data manager for Sleeptracker-series watches.
+ * Copyright (C) 2009-2011 Pavel Fatin <http://pavelfatin.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.pavelfatin.sleeparchiver.model;
+
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public class SummaryCacheTest {
+    private static final LocalDate START = LocalDate.of(2009, 1, 1);
+
+    @Test
+    public void empty() {
+        SummaryCache cache = new SummaryCache(new NightStore(new ArrayList<>()));
+
+        SummaryCache.Statistics statistics = cache.statistics(START, START.plusYears(1));
+
+        assertThat(statistics.nights(), equalTo(0));
+        assertThat(Double.isNaN(statistics.meanDuration()), equalTo(true));
+        assertThat(Double.isNaN(statistics.medianDuration()), equalTo(true));
+    }
+
+    @Test
+    public void figures() {
+        SummaryCache cache = new SummaryCache(new NightStore(newList(
+                night(START, 23, true),
+                night(START.plusDays(1), 22, false),
+                night(START.plusDays(2), 21, true),
+                new Night(START.plusDays(3), null, 0, null, new ArrayList<>()))));
+
+        SummaryCache.Statistics statistics = cache.statistics(START, START.plusDays(4));
+
+        assertThat(statistics.nights(), equalTo(4));
+        assertThat(statistics.completeNights(), equalTo(3));
+        assertThat(statistics.meanDuration(), equalTo(540.0));
+        assertThat(statistics.medianDuration(), equalTo(540.0));
+        assertThat(statistics.breaksPerNight(), equalTo(1.0));
+        assertThat(statistics.deepSleepShare(), equalTo(1.0));
+        assertThat(statistics.alarmSuccessRate(), equalTo(2 / 3.0));
+    }
+
+    @Test
+    public void evenMedian() {
+        SummaryCache cache = new SummaryCache(new NightStore(newList(
+                night(START, 23, true),
+                night(START.plusDays(1), 22, true))));
+
+        assertThat(cache.statistics(START, START.plusDays(2)).medianDuration(), equalTo(510.0));
+    }
+
+    @Test
+    public void sameAsStore() {
+        List<Night> nights = nights(START, 400);
+        NightStore store = new NightStore(nights);
+        SummaryCache cache = new SummaryCache(store);
+
+        LocalDate[] bounds = {START, START.plusDays(17), LocalDate.of(2009, 3, 1), LocalDate.of(2009, 7, 15),
+                LocalDate.of(2010, 1, 1), LocalDate.of(2010, 2, 10), START.plusYears(2)};
+        for (LocalDate from : bounds) {
+            for (LocalDate to : bounds) {
+                if (from.isBefore(to)) {
+                    assertThat(cache.statistics(from, to), equalTo(direct(nights, from, to)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void reusesMonths() {
+        SummaryCache cache = new SummaryCache(new NightStore(nights(START, 365)));
+
+        cache.statistics(START, START.plusYears(1));
+
+        assertThat(cache.size(), equalTo(12));
+
+        cache.statistics(START.plusDays(40), START.plusDays(200));
+
+        assertThat(cache.size(), equalTo(12));
+    }
+
+    @Test
+    public void invalidate() {
+        List<Night> nights = nights(START, 365);
+        NightStore store = new NightStore(nights);
+        SummaryCache cache = new SummaryCache(store);
+        cache.statistics(START, START.plusYears(1));
+
+        List<Night> removed = newList(nights.get(40), nights.get(41));
+        List<Night> added = newList(night(LocalDate.of(2009, 6, 3), 20, true));
+        store.update(removed, added);
+        cache.invalidate(removed);
+        cache.invalidate(added);
+        nights.removeAll(removed);
+        nights.addAll(added);
+
+        assertThat(cache.size(), equalTo(10));
+        assertThat(cache.statistics(START, START.plusYears(1)), equalTo(direct(nights, START, START.plusYears(1))));
+    }
+
+    private static SummaryCache.Statistics direct(List<Night> all, LocalDate from, LocalDate to) {
+        int nights = 0;
+        long breaks = 0;
+        long deepSleep = 0;
+        int alarms = 0;
+        int alarmsWorked = 0;
+        List<Integer> durations = new ArrayList<>();
+        for (Night night : all) {
+            if (night.getDate() == null || night.getDate().isBefore(from) || !night.getDate().isBefore(to)) {
+                continue;
+            }
+            nights++;
+            if (night.getAlarm() != null) {
+                alarms++;
+                alarmsWorked += night.isAlarmWorked() ? 1 : 0;
+            }
+            if (night.isComplete()) {
+                durations.add(night.getMetrics().getDuration());
+                breaks += night.getMetrics().getBreaksCount();
+                deepSleep += night.getMetrics().getDeepSleepMinutes();
+            }
+        }
+        durations.sort(null);
+        int n = durations.size();
+        long duration = durations.stream().mapToLong(Integer::longValue).sum();
+        return new SummaryCache.Statistics(nights, n,
+                n == 0 ? Double.NaN : (double) duration / n,
+                median(durations),
+                n == 0 ? Double.NaN : (double) breaks / n,
+                duration == 0 ? Double.NaN : (double) deepSleep / duration,
+                alarms == 0 ? Double.NaN : (double) alarmsWorked / alarms);
+    }
+
+    private static double median(List<Integer> sorted) {
+        int n = sorted.size();
+        if (n == 0) {
+            return Double.NaN;
+        }
+        return n % 2 == 1 ? sorted.get(n / 2) : (sorted.get(n / 2 - 1) + sorted.get(n / 2)) / 2.0;
+    }
+
+    private static List<Night> nights(LocalDate start, int count) {
+        List<Night> nights = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            nights.add(night(start.plusDays(i), 20 + i % 4, i % 3 != 0));
+        }
+        return nights;
+    }
+
+    private static Night night(LocalDate date, int toBed, boolean alarmWorked) {
+        return new Night(date, LocalTime.of(7, 0), 20, LocalTime.of(toBed, 0),
+                Ease.Unknown, Quality.Unknown, Ease.Unknown, alarmWorked, "",
+                newList(LocalTime.of(3, 0)), new ArrayList<>());
+    }
+}
@@ -18,7 +18,15 @@
 
 package com.pavelfatin.sleeparchiver.model;
 
+import static com.pavelfatin.sleeparchiver.lang.Utilities.newList;
+
 import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 public class TestUtilities {
     public static File createTempFile(String name) {
@@ -51,4 +59,39 @@ public class TestUtilities {
         }
     }
 
+    public static Night night(LocalDate date) {
+        return new Night(date, LocalTime.of(7, 0), 20, LocalTime.of(23, 0), newList(LocalTime.of(3, 0)));
+    }
+
+    /**
+     * @return a complete night with all the fields set, different for every year
+     */
+    public static Night night(int year, int month) {
+        return new Night(LocalDate.of(year, month, 1), LocalTime.of(7, 0), 20, LocalTime.of(23, 0),
+                Ease.Easy, Quality.Good, Ease.Normal, true, "Comment " + year,
+                newList(LocalTime.of(1, 0), LocalTime.of(4, 30)), newList("Condition " + year));
+    }
+
+    /**
+     * @return nights within 120 days from the start, some undated, incomplete or sharing a date
+     */
+    public static List<Night> randomNights(LocalDate start, int count, Random random) {
+        List<Night> nights = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocalDate date = random.nextInt(20) == 0 ? null : start.plusDays(random.nextInt(120));
+            LocalTime toBed = LocalTime.of(22 + random.nextInt(2), random.nextInt(60));
+            LocalTime alarm = random.nextInt(5) == 0 ? null : LocalTime.of(6 + random.nextInt(2), random.nextInt(60));
+            List<LocalTime> moments = new ArrayList<>();
+            if (random.nextBoolean()) {
+                for (int j = random.nextInt(10); j > 0; j--) {
+                    moments.add(LocalTime.of(random.nextInt(6), random.nextInt(60)));
+                }
+                Collections.sort(moments);
+            }
+            nights.add(new Night(date, alarm, 20, toBed, Ease.Unknown, Quality.Unknown, Ease.Unknown,
+                    random.nextBoolean(), "", moments, new ArrayList<>()));
+        }
+        return nights;
+    }
+
 }